@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks that typical differences between two syncs come out as the fewest notifications,
+    and that applying them turns the old list into the new one.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final String LOCATION = "94043";
+    private static final String ART_PACK = "art-pack-%s";
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long TODAY = 16424;
+    private static final int DAYS = 14;
+
+    public void testResyncWithSameDataNotifiesNothing() {
+        assertEquals(Arrays.<String>asList(), diff(rows(TODAY, 0, DAYS), rows(TODAY, 0, DAYS)));
+    }
+
+    public void testChangedTemperaturesOnlyRebindThoseFields() {
+        ForecastDiff.Rows newRows = rows(TODAY, 0, DAYS);
+        newRows.highs[3] += 2;
+        newRows.highs[4] += 1;
+        newRows.lows[4] -= 1;
+        newRows.highs[5] += 1;
+        assertEquals(Arrays.asList(
+                "change 3+1 " + ForecastDiff.CHANGED_HIGH,
+                "change 4+1 " + (ForecastDiff.CHANGED_HIGH | ForecastDiff.CHANGED_LOW),
+                "change 5+1 " + ForecastDiff.CHANGED_HIGH),
+                diff(rows(TODAY, 0, DAYS), newRows));
+    }
+
+    public void testChangedConditionRebindsIconAndDescription() {
+        ForecastDiff.Rows newRows = rows(TODAY, 0, DAYS);
+        newRows.conditionIds[6] = 500;
+        newRows.conditionIds[7] = 500;
+        assertEquals(Arrays.asList("change 6+2 " + ForecastDiff.CHANGED_CONDITION),
+                diff(rows(TODAY, 0, DAYS), newRows));
+    }
+
+    public void testNextDaysSync() {
+        // A day on: yesterday is gone, a new last day arrives, and every label moves on.  The
+        // row that becomes the first takes its layout, so it is bound from scratch.
+        assertEquals(Arrays.asList(
+                "remove 0+1",
+                "change 0+1 full",
+                "change 1+12 " + ForecastDiff.CHANGED_DATE,
+                "insert 13+1"),
+                diff(rows(TODAY, 0, DAYS), rows(TODAY + 1, 1, DAYS)));
+    }
+
+    public void testShorterForecast() {
+        assertEquals(Arrays.asList("remove 10+4"),
+                diff(rows(TODAY, 0, DAYS), rows(TODAY, 0, 10)));
+    }
+
+    public void testFirstSyncInsertsEverything() {
+        assertEquals(Arrays.asList("insert 0+" + DAYS),
+                diff(rows(TODAY, 0, 0), rows(TODAY, 0, DAYS)));
+    }
+
+    public void testUnitsChangeRebindsTemperatures() {
+        ForecastDiff.Rows imperial = new ForecastDiff.Rows(LOCATION, TODAY, false, ART_PACK,
+                dates(0, DAYS), conditions(DAYS), highs(dates(0, DAYS)), lows(dates(0, DAYS)));
+        assertEquals(Arrays.asList(
+                "change 0+" + DAYS + " " + (ForecastDiff.CHANGED_HIGH | ForecastDiff.CHANGED_LOW)),
+                diff(rows(TODAY, 0, DAYS), imperial));
+    }
+
+    public void testOtherLocationHasNothingInCommon() {
+        ForecastDiff.Rows elsewhere = new ForecastDiff.Rows("10001", TODAY, true, ART_PACK,
+                dates(0, DAYS), conditions(DAYS), highs(dates(0, DAYS)), lows(dates(0, DAYS)));
+        assertNull(ForecastDiff.compute(rows(TODAY, 0, DAYS), elsewhere));
+    }
+
+    public void testGapsAndOverlaps() {
+        // Days 0-13 against 2-5 and 8-17.
+        long[] dates = new long[14];
+        for (int i = 0; i < 4; i++) dates[i] = date(2 + i);
+        for (int i = 0; i < 10; i++) dates[4 + i] = date(8 + i);
+        ForecastDiff.Rows newRows = new ForecastDiff.Rows(LOCATION, TODAY, true, ART_PACK,
+                dates, conditions(14), highs(dates), lows(dates));
+        assertEquals(Arrays.asList(
+                "remove 0+2",
+                "change 0+1 full",
+                "remove 4+2",
+                "insert 10+4"),
+                diff(rows(TODAY, 0, DAYS), newRows));
+    }
+
+    // Returns the notifications, after checking they turn the old dates into the new ones.
+    private static List<String> diff(ForecastDiff.Rows oldRows, ForecastDiff.Rows newRows) {
+        final List<String> ops = new ArrayList<String>();
+        final List<Long> list = new ArrayList<Long>();
+        for (long date : oldRows.dates) list.add(date);
+
+        ForecastDiff.compute(oldRows, newRows).dispatchTo(new ForecastDiff.Callback() {
+            @Override
+            public void onInserted(int position, int count) {
+                ops.add("insert " + position + "+" + count);
+                for (int i = 0; i < count; i++) list.add(position + i, null);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                ops.add("remove " + position + "+" + count);
+                for (int i = 0; i < count; i++) list.remove(position);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                ops.add("change " + position + "+" + count + " "
+                        + (payload == null ? "full" : payload));
+                assertTrue(position + count <= list.size());
+            }
+        });
+
+        assertEquals("Error: The notifications don't give the new list's size",
+                newRows.size(), list.size());
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) != null) {
+                assertEquals("Error: Row " + i + " isn't where the new list has it",
+                        newRows.dates[i], (long) list.get(i));
+            }
+        }
+        return ops;
+    }
+
+    private static ForecastDiff.Rows rows(long today, int firstDay, int count) {
+        long[] dates = dates(firstDay, count);
+        return new ForecastDiff.Rows(LOCATION, today, true, ART_PACK, dates, conditions(count),
+                highs(dates), lows(dates));
+    }
+
+    private static long date(int day) {
+        return (TODAY + day) * DAY_IN_MILLIS;
+    }
+
+    private static long[] dates(int firstDay, int count) {
+        long[] dates = new long[count];
+        for (int i = 0; i < count; i++) dates[i] = date(firstDay + i);
+        return dates;
+    }
+
+    private static int[] conditions(int count) {
+        int[] conditions = new int[count];
+        Arrays.fill(conditions, 800);
+        return conditions;
+    }
+
+    // The same temperatures for a day in every list, so only the changes a test makes show.
+    private static double[] highs(long[] dates) {
+        double[] highs = new double[dates.length];
+        for (int i = 0; i < dates.length; i++) highs[i] = 20 + dates[i] / DAY_IN_MILLIS - TODAY;
+        return highs;
+    }
+
+    private static double[] lows(long[] dates) {
+        double[] lows = new double[dates.length];
+        for (int i = 0; i < dates.length; i++) lows[i] = 10 - dates[i] / DAY_IN_MILLIS + TODAY;
+        return lows;
+    }
+}
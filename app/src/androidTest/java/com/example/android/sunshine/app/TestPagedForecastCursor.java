@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Walks a long synthetic history through the provider's keyset-paged URIs and checks that
+    PagedForecastCursor returns every row exactly once while holding only a few pages open,
+    and that a closed page can't be read until it has been queried again.  The pages here are
+    larger than the app's, so walking ten thousand rows takes fewer round trips.
+ */
+public class TestPagedForecastCursor extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestPagedForecastCursor.class.getSimpleName();
+
+    private static final String LOCATION = "paging-location";
+    private static final int ROWS = 10000;
+    private static final long START_DATE = 1419033600000L;  // December 20th, 2014
+    private static final int PAGE_SIZE = 50;
+
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+    private static final int COL_DATE = 1;
+
+    private long mStartDate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(getContext());
+
+        long locationId = TestUtilities.insertLocation(getContext(), LOCATION);
+        ContentValues[] values = TestUtilities.createForecastValues(locationId, START_DATE, ROWS);
+        assertEquals(ROWS, getContext().getContentResolver().bulkInsert(
+                WeatherEntry.CONTENT_URI, values));
+        mStartDate = WeatherContract.normalizeDate(START_DATE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(getContext());
+        super.tearDown();
+    }
+
+    public void testPageQueryHonoursKeyAndLimit() {
+        Cursor first = query(WeatherEntry.buildWeatherLocationWithStartDate(
+                LOCATION, START_DATE, PagedForecastCursor.PAGE_SIZE));
+        assertEquals(PagedForecastCursor.PAGE_SIZE, first.getCount());
+        assertTrue(first.moveToLast());
+        long lastDate = first.getLong(COL_DATE);
+        first.close();
+
+        Cursor next = query(WeatherEntry.buildWeatherLocationPage(
+                LOCATION, lastDate, PagedForecastCursor.PAGE_SIZE));
+        assertEquals(PagedForecastCursor.PAGE_SIZE, next.getCount());
+        assertTrue(next.moveToFirst());
+        assertTrue("Error: Next page repeated the previous page's last row",
+                next.getLong(COL_DATE) > lastDate);
+        next.close();
+    }
+
+    public void testWalksEveryRowOnceWithBoundedPages() {
+        long heapBefore = Debug.getNativeHeapAllocatedSize();
+        // Stands in for the loader's cursor, which the PagedForecastCursor doesn't own.
+        Cursor firstPage = query(WeatherEntry.buildWeatherLocationWithStartDate(
+                LOCATION, START_DATE, PAGE_SIZE));
+        PagedForecastCursor cursor = new PagedForecastCursor(getContext().getContentResolver(),
+                LOCATION, COLUMNS, COL_DATE, PAGE_SIZE, PagedForecastCursor.MAX_RESIDENT_PAGES,
+                firstPage);
+        long peakHeap = 0;
+        try {
+            // Scroll to the end the way the adapter does: read up to the end, then load more.
+            long[] dates = new long[ROWS];
+            long previousDate = Long.MIN_VALUE;
+            int position = 0;
+            do {
+                for (; position < cursor.getCount(); position++) {
+                    assertTrue(cursor.moveToPosition(position));
+                    long date = cursor.getLong(COL_DATE);
+                    assertTrue("Error: Rows out of order or repeated at " + position,
+                            date > previousDate);
+                    previousDate = date;
+                    dates[position] = date;
+                }
+                peakHeap = Math.max(peakHeap, Debug.getNativeHeapAllocatedSize() - heapBefore);
+            } while (loadNextPage(cursor));
+
+            assertEquals(ROWS, cursor.getCount());
+            assertFalse(cursor.hasMore());
+
+            // Scrolling back up finds the pages closed on the way down, without querying them.
+            final int reread = PAGE_SIZE * 3 + 1;
+            assertFalse(cursor.isResident(reread));
+            assertFalse(cursor.moveToPosition(reread));
+            final PagedForecastCursor pagedCursor = cursor;
+            pagedCursor.reloadPage(reread);
+            new PollingCheck(10000) {
+                @Override
+                protected boolean check() {
+                    return pagedCursor.isResident(reread);
+                }
+            }.run();
+            assertTrue(cursor.moveToPosition(reread));
+            assertEquals(dates[reread], cursor.getLong(COL_DATE));
+            assertTrue(cursor.moveToFirst());
+            assertEquals(mStartDate, cursor.getLong(COL_DATE));
+        } finally {
+            cursor.close();
+            firstPage.close();
+        }
+
+        int maxResidentRows = PAGE_SIZE * (PagedForecastCursor.MAX_RESIDENT_PAGES + 1);
+        Log.i(LOG_TAG, "Peak resident rows " + cursor.getPeakResidentRows() + " of " + ROWS +
+                ", peak native heap growth " + peakHeap / 1024 + "KB");
+        assertTrue("Error: Paging held " + cursor.getPeakResidentRows() + " rows open",
+                cursor.getPeakResidentRows() <= maxResidentRows);
+    }
+
+    /*
+        A sync that drops days while a page is closed means the page comes back shorter.  The
+        cursor keeps its count and row positions until the loader hands over a new one.
+     */
+    public void testShorterReloadedPageKeepsCount() {
+        final String location = "paging-short";
+        final int pageSize = 10;
+        long locationId = TestUtilities.insertLocation(getContext(), location);
+        assertEquals(25, getContext().getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createForecastValues(locationId, START_DATE, 25)));
+
+        Cursor firstPage = query(WeatherEntry.buildWeatherLocationWithStartDate(
+                location, START_DATE, pageSize));
+        final PagedForecastCursor cursor = new PagedForecastCursor(
+                getContext().getContentResolver(), location, COLUMNS, COL_DATE, pageSize, 1,
+                firstPage);
+        try {
+            assertTrue(loadNextPage(cursor));
+            assertTrue(cursor.moveToPosition(15));
+            long removedFrom = cursor.getLong(COL_DATE);
+            assertTrue(cursor.moveToPosition(12));
+            long kept = cursor.getLong(COL_DATE);
+
+            // The last page is short, so that is the end.
+            assertTrue(loadNextPage(cursor));
+            assertEquals(25, cursor.getCount());
+            assertFalse(cursor.hasMore());
+            assertFalse(cursor.isResident(12));
+
+            getContext().getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ?",
+                    new String[]{Long.toString(locationId), Long.toString(removedFrom)});
+            cursor.reloadPage(12);
+            new PollingCheck(10000) {
+                @Override
+                protected boolean check() {
+                    return cursor.isResident(12);
+                }
+            }.run();
+
+            assertEquals(25, cursor.getCount());
+            assertTrue(cursor.moveToPosition(12));
+            assertEquals(kept, cursor.getLong(COL_DATE));
+            assertFalse("Error: Read a row the reloaded page no longer has",
+                    cursor.moveToPosition(15));
+            assertTrue(cursor.moveToFirst());
+        } finally {
+            cursor.close();
+            firstPage.close();
+        }
+    }
+
+    /*
+        Starts loading the next page and waits for it to arrive, or for the cursor to find
+        there isn't one.
+
+        @return true if rows were added
+     */
+    private boolean loadNextPage(final PagedForecastCursor cursor) {
+        final int count = cursor.getCount();
+        cursor.loadNextPage();
+        new PollingCheck(10000) {
+            @Override
+            protected boolean check() {
+                return cursor.getCount() > count || !cursor.hasMore();
+            }
+        }.run();
+        return cursor.getCount() > count;
+    }
+
+    private Cursor query(Uri uri) {
+        Cursor cursor = getContext().getContentResolver().query(uri, COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        return cursor;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestPreferencesSnapshot extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mSavedUnits == null) {
+            mPrefs.edit().remove(mUnitsKey).commit();
+        } else {
+            mPrefs.edit().putString(mUnitsKey, mSavedUnits).commit();
+        }
+        super.tearDown();
+    }
+
+    public void testMatchesPreferences() {
+        PreferencesSnapshot snapshot = PreferencesSnapshot.get(mContext);
+        assertEquals(mPrefs.getString(mContext.getString(R.string.pref_location_key),
+                mContext.getString(R.string.pref_location_default)), snapshot.location);
+        String sunshineArtPack = mContext.getString(R.string.pref_art_pack_sunshine);
+        String artPack = mPrefs.getString(mContext.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        assertEquals(artPack, snapshot.artPack);
+        assertEquals(artPack.equals(sunshineArtPack), snapshot.localGraphics);
+    }
+
+    public void testRebuiltOnChange() {
+        final PreferencesSnapshot before = PreferencesSnapshot.get(mContext);
+        final boolean metric = !before.metric;
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(metric
+                ? R.string.pref_units_metric : R.string.pref_units_imperial)).commit();
+
+        // The listener runs on the main thread, so the new snapshot arrives a little later.
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return Utility.isMetric(mContext) == metric;
+            }
+        }.run();
+
+        PreferencesSnapshot after = PreferencesSnapshot.get(mContext);
+        assertNotSame("Error: A snapshot was changed in place", before, after);
+        assertEquals(!metric, before.metric);
+        assertEquals(before.location, after.location);
+        assertEquals(before.artPack, after.artPack);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+/*
+    Loads bundled art through its resource URI, so nothing here needs the network, and checks
+    that art comes back at the size asked for and is shared between requests for that size.
+ */
+public class TestWeatherArt extends AndroidTestCase {
+
+    private String artUrl(int resource) {
+        return "android.resource://" + mContext.getPackageName() + "/" + resource;
+    }
+
+    public void testDecodesAtRequestedSize() throws Exception {
+        int size = WeatherArt.getListIconSize(mContext);
+        Bitmap art = WeatherArt.get(mContext, artUrl(R.drawable.art_clear), R.drawable.art_clear,
+                size, size);
+        assertNotNull(art);
+        assertTrue("Error: Art wider than asked for: " + art.getWidth(), art.getWidth() <= size);
+        assertTrue("Error: Art taller than asked for: " + art.getHeight(),
+                art.getHeight() <= size);
+    }
+
+    public void testSameArtAndSizeIsShared() throws Exception {
+        String url = artUrl(R.drawable.art_rain);
+        int size = WeatherArt.getTodayIconSize(mContext);
+        Bitmap first = WeatherArt.get(mContext, url, R.drawable.art_rain, size, size);
+
+        int hits = WeatherArt.getHitCount();
+        int misses = WeatherArt.getMissCount();
+        Bitmap second = WeatherArt.get(mContext, url, R.drawable.art_rain, size, size);
+        assertSame("Error: The same art at the same size was decoded again", first, second);
+        assertEquals(hits + 1, WeatherArt.getHitCount());
+        assertEquals(misses, WeatherArt.getMissCount());
+
+        // Another size is its own entry.
+        Bitmap smaller = WeatherArt.get(mContext, url, R.drawable.art_rain, size / 2, size / 2);
+        assertNotSame(first, smaller);
+        assertEquals(misses + 1, WeatherArt.getMissCount());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+/*
+    Checks every condition id, and a few outside the table, against the lookups the tables
+    replaced.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    private static final int[] OUT_OF_RANGE_IDS = {Integer.MIN_VALUE, -1, 1000, 5000,
+            Integer.MAX_VALUE};
+
+    public void testResourcesMatchLegacy() {
+        for (int id = 0; id <= WeatherConditions.MAX_ID; id++) {
+            checkResources(id);
+        }
+        for (int id : OUT_OF_RANGE_IDS) {
+            checkResources(id);
+        }
+    }
+
+    public void testStringsMatchLegacy() {
+        for (int id = 0; id <= WeatherConditions.MAX_ID; id++) {
+            assertEquals("Error: Description differs for " + id,
+                    LegacyWeatherConditions.getStringForWeatherCondition(mContext, id),
+                    Utility.getStringForWeatherCondition(mContext, id));
+        }
+        for (int id : OUT_OF_RANGE_IDS) {
+            assertEquals(LegacyWeatherConditions.getStringForWeatherCondition(mContext, id),
+                    Utility.getStringForWeatherCondition(mContext, id));
+        }
+    }
+
+    public void testArtUrlsMatchLegacyForEveryPack() {
+        String[] packs = mContext.getResources().getStringArray(R.array.pref_art_pack_values);
+        for (String pack : packs) {
+            for (int id = 0; id <= WeatherConditions.MAX_ID; id++) {
+                assertEquals("Error: Art URL differs for " + id + " in " + pack,
+                        LegacyWeatherConditions.getArtUrlForWeatherCondition(pack, id),
+                        WeatherConditions.getArtUrl(pack, id));
+            }
+        }
+        // Switching back to a pack rebuilds its URLs rather than serving the last pack's.
+        assertEquals(LegacyWeatherConditions.getArtUrlForWeatherCondition(packs[0], 800),
+                WeatherConditions.getArtUrl(packs[0], 800));
+    }
+
+    private void checkResources(int id) {
+        assertEquals("Error: Icon differs for " + id,
+                LegacyWeatherConditions.getIconResourceForWeatherCondition(id),
+                Utility.getIconResourceForWeatherCondition(id));
+        assertEquals("Error: Art differs for " + id,
+                LegacyWeatherConditions.getArtResourceForWeatherCondition(id),
+                Utility.getArtResourceForWeatherCondition(id));
+        assertEquals("Error: Image URL differs for " + id,
+                LegacyWeatherConditions.getImageUrlForWeatherCondition(id),
+                Utility.getImageUrlForWeatherCondition(id));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.DayNormalizer;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/*
+    Checks the formatter against the formatting it replaced, in every locale the device has.
+ */
+public class TestWeatherFormatter extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long HOUR_IN_MILLIS = 60L * 60 * 1000;
+    // Halves and near-halves, zero from both sides, and values outside the kept range.
+    private static final double[] EDGE_TEMPERATURES = {0.0, -0.0, 0.5, -0.5, 0.49999999999999994,
+            -0.49999999999999994, 2.5, -2.5, 1e-300, -1e-300, 149.5, -150.5, 199.5, 200.5,
+            -1000.25, 1e12, Double.MAX_VALUE, Double.NEGATIVE_INFINITY, Double.NaN};
+
+    private Locale mDefaultLocale;
+    private TimeZone mDefaultZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultLocale = Locale.getDefault();
+        mDefaultZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mDefaultLocale);
+        useZone(mDefaultZone);
+        super.tearDown();
+    }
+
+    // What TimeZoneChangedReceiver does when the device's zone changes.
+    private static void useZone(TimeZone zone) {
+        TimeZone.setDefault(zone);
+        DayNormalizer.onTimeZoneChanged();
+        WeatherFormatter.getInstance().onTimeZoneChanged();
+    }
+
+    public void testTemperaturesMatchLegacy() {
+        for (Locale locale : Locale.getAvailableLocales()) {
+            Locale.setDefault(locale);
+            for (int tenths = -600; tenths <= 600; tenths += 7) {
+                checkTemperature(locale, tenths / 10.0);
+            }
+            for (double temperature : EDGE_TEMPERATURES) {
+                checkTemperature(locale, temperature);
+            }
+        }
+    }
+
+    public void testDayLabelsMatchLegacy() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (Locale locale : Locale.getAvailableLocales()) {
+            Locale.setDefault(locale);
+            // A few days back to a few past the kept window, at the start of the day the way
+            // rows store them and later in the day.
+            for (int day = -3; day <= WeatherFormatter.WINDOW_DAYS + 3; day++) {
+                long date = today + day * DAY_IN_MILLIS;
+                checkDate(locale, date);
+                checkDate(locale, date + 13 * HOUR_IN_MILLIS);
+            }
+        }
+    }
+
+    public void testLabelsFollowTheLocale() {
+        long date = WeatherContract.normalizeDate(System.currentTimeMillis()) + 9 * DAY_IN_MILLIS;
+        Locale.setDefault(Locale.US);
+        String english = Utility.getFriendlyDayString(mContext, date, false);
+        Locale.setDefault(Locale.FRANCE);
+        assertEquals(LegacyFormatting.getFriendlyDayString(mContext, date, false),
+                Utility.getFriendlyDayString(mContext, date, false));
+        Locale.setDefault(Locale.US);
+        assertEquals(english, Utility.getFriendlyDayString(mContext, date, false));
+    }
+
+    public void testLabelsFollowTheZoneOnceTold() {
+        useZone(TimeZone.getTimeZone("Pacific/Kiritimati"));
+        long date = WeatherContract.normalizeDate(System.currentTimeMillis()) + 3 * DAY_IN_MILLIS;
+        Utility.getFullFriendlyDayString(mContext, date);
+
+        // Eleven hours behind UTC against fourteen ahead, so today is a different day.
+        useZone(TimeZone.getTimeZone("Pacific/Pago_Pago"));
+        date = WeatherContract.normalizeDate(System.currentTimeMillis()) + 3 * DAY_IN_MILLIS;
+        checkDate(Locale.getDefault(), date);
+        checkDate(Locale.getDefault(), date - 3 * DAY_IN_MILLIS);
+    }
+
+    private void checkTemperature(Locale locale, double temperature) {
+        assertEquals("Error: Celsius differs for " + temperature + " in " + locale,
+                LegacyFormatting.formatTemperature(mContext, temperature, true),
+                Utility.formatTemperature(mContext, temperature, true));
+        assertEquals("Error: Fahrenheit differs for " + temperature + " in " + locale,
+                LegacyFormatting.formatTemperature(mContext, temperature, false),
+                Utility.formatTemperature(mContext, temperature, false));
+    }
+
+    private void checkDate(Locale locale, long date) {
+        String where = " for " + date + " in " + locale;
+        assertEquals("Error: Friendly day differs" + where,
+                LegacyFormatting.getFriendlyDayString(mContext, date, false),
+                Utility.getFriendlyDayString(mContext, date, false));
+        assertEquals("Error: Friendly day with long today differs" + where,
+                LegacyFormatting.getFriendlyDayString(mContext, date, true),
+                Utility.getFriendlyDayString(mContext, date, true));
+        assertEquals("Error: Full friendly day differs" + where,
+                LegacyFormatting.getFullFriendlyDayString(mContext, date),
+                Utility.getFullFriendlyDayString(mContext, date));
+        assertEquals("Error: Day name differs" + where,
+                LegacyFormatting.getDayName(mContext, date),
+                Utility.getDayName(mContext, date));
+        assertEquals("Error: Month and day differ" + where,
+                LegacyFormatting.getFormattedMonthDay(mContext, date),
+                Utility.getFormattedMonthDay(mContext, date));
+    }
+}
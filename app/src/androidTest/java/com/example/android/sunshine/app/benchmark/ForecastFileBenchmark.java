@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastFile;
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares reading today's weather the way the Today widget, Muzei and the wear service do,
+    through the provider and through the forecast file.  The provider runs in this process, so
+    its numbers leave out the Binder hop a launcher-hosted widget pays; the gap on a device is
+    wider than logged here.
+ */
+public class ForecastFileBenchmark extends AndroidTestCase {
+
+    private static final String FILE_LOCATION = "forecast-file-benchmark-location";
+    private static final int READS = 500;
+
+    // Matches the columns TodayWidgetIntentService asks for.
+    private static final String[] TODAY_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(getContext());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Also empties the forecast file, since every weather write does.
+        TestUtilities.deleteAllRecords(getContext());
+        super.tearDown();
+    }
+
+    public void testTodayReadLatency() {
+        long locationId = TestUtilities.insertLocation(getContext(), FILE_LOCATION);
+        long startDate = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] values = TestUtilities.createForecastValues(locationId, startDate,
+                ProviderReadWriteBenchmark.DAYS_PER_SYNC);
+        getContext().getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        // The same order the sync uses: the file goes after the provider writes, which empty it.
+        ForecastFile file = ForecastFile.getInstance(getContext());
+        file.write(FILE_LOCATION, values);
+
+        long[] provider = new long[READS];
+        long[] mapped = new long[READS];
+        for (int i = 0; i < READS; i++) {
+            long start = System.nanoTime();
+            Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(FILE_LOCATION,
+                    System.currentTimeMillis());
+            Cursor cursor = getContext().getContentResolver().query(uri, TODAY_COLUMNS, null,
+                    null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertNotNull(cursor);
+            assertTrue(cursor.moveToFirst());
+            double high = cursor.getDouble(2);
+            cursor.close();
+            provider[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ForecastFile.Day today = file.readToday(FILE_LOCATION, System.currentTimeMillis());
+            mapped[i] = System.nanoTime() - start;
+            assertNotNull("Error: The forecast file couldn't answer", today);
+            assertEquals(high, today.high);
+        }
+
+        ProviderReadWriteBenchmark.report("today via provider", provider);
+        ProviderReadWriteBenchmark.report("today via forecast file", mapped);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Flings the forecast list up and down and records the time between frames while it moves,
+    which is where row binding on the main thread shows up as jank.  Compare the logged
+    percentiles and the count of slow frames across builds.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class ForecastFlingBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    // One page of the list, so every row is one the loader formatted.
+    private static final int DAYS = 50;
+    private static final int FLINGS = 10;
+    private static final int FLING_VELOCITY = 8000;
+    private static final long FRAME_BUDGET_NANOS = 16666667;
+
+    private final List<Long> mFrameNanos = new ArrayList<Long>();
+    private volatile boolean mRecording;
+    private long mLastFrameTime;
+
+    public ForecastFlingBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        TestUtilities.deleteAllRecords(context);
+        long locationId = TestUtilities.insertLocation(context,
+                Utility.getPreferredLocation(context));
+        context.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createForecastValues(locationId,
+                        WeatherContract.normalizeDate(System.currentTimeMillis()), DAYS));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(getInstrumentation().getTargetContext());
+        super.tearDown();
+    }
+
+    public void testFlingFrameTimes() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) return;
+
+        final RecyclerView list = (RecyclerView) getActivity().findViewById(R.id.recyclerview_forecast);
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return list.getAdapter() != null && list.getAdapter().getItemCount() >= DAYS;
+            }
+        }.run();
+
+        final Choreographer.FrameCallback recorder = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (!mRecording) return;
+                if (mLastFrameTime != 0) {
+                    mFrameNanos.add(frameTimeNanos - mLastFrameTime);
+                }
+                mLastFrameTime = frameTimeNanos;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        };
+
+        for (int i = 0; i < FLINGS; i++) {
+            final int velocity = i % 2 == 0 ? FLING_VELOCITY : -FLING_VELOCITY;
+            runTestOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mRecording = true;
+                    mLastFrameTime = 0;
+                    Choreographer.getInstance().postFrameCallback(recorder);
+                    list.fling(0, velocity);
+                }
+            });
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return list.getScrollState() == RecyclerView.SCROLL_STATE_IDLE;
+                }
+            }.run();
+            mRecording = false;
+            getInstrumentation().waitForIdleSync();
+        }
+
+        long[] nanos = new long[mFrameNanos.size()];
+        int slowFrames = 0;
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = mFrameNanos.get(i);
+            if (nanos[i] > FRAME_BUDGET_NANOS * 3 / 2) slowFrames++;
+        }
+        assertTrue("Error: No frames were drawn during the flings", nanos.length > 0);
+        ProviderReadWriteBenchmark.report("fling frame times", nanos);
+        Log.i(ProviderReadWriteBenchmark.LOG_TAG, String.format("fling: %d of %d frames missed "
+                + "their vsync", slowFrames, nanos.length));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.data.WeatherDbHelper;
+import com.example.android.sunshine.app.data.WeatherProvider;
+
+/*
+    Archives a year of one location's days and logs the bytes they take in the history table and
+    how long 30-day range queries over them take.  Compare the logged numbers across builds; it
+    only fails if archiving or the queries break outright.
+ */
+public class HistoryArchiveBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = HistoryArchiveBenchmark.class.getSimpleName();
+
+    private static final String HISTORY_LOCATION = "history-benchmark-location";
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int DAYS = 365;
+    private static final int RANGE_DAYS = 30;
+    private static final int READS = 200;
+    private static final long START_DATE = 1419033600000L;  // December 20th, 2014
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(getContext());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Deleting the locations drops their history too.
+        TestUtilities.deleteAllRecords(getContext());
+        super.tearDown();
+    }
+
+    public void testArchiveSizeAndRangeQueries() {
+        long locationId = TestUtilities.insertLocation(getContext(), HISTORY_LOCATION);
+        long startDate = WeatherContract.normalizeDate(START_DATE);
+        assertEquals(DAYS, getContext().getContentResolver().bulkInsert(
+                WeatherEntry.CONTENT_URI,
+                TestUtilities.createForecastValues(locationId, startDate, DAYS)));
+        long lastDate = WeatherContract.normalizeDate(startDate + (DAYS - 1) * DAY_IN_MILLIS);
+
+        long archiveStart = System.nanoTime();
+        Bundle result = getContext().getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherProvider.METHOD_ARCHIVE_WEATHER, Long.toString(lastDate), null);
+        long archiveNanos = System.nanoTime() - archiveStart;
+        assertNotNull(result);
+        assertEquals(DAYS, result.getInt(WeatherProvider.KEY_ARCHIVED_ROWS));
+
+        SQLiteDatabase db = new WeatherDbHelper(getContext()).getReadableDatabase();
+        long bytes = DatabaseUtils.longForQuery(db, "SELECT SUM(length(" + HistoryEntry.COLUMN_DAYS +
+                ")) FROM " + HistoryEntry.TABLE_NAME, null);
+        db.close();
+        Log.i(LOG_TAG, String.format("archived %d days in %.3fms: %d bytes per location-year, "
+                        + "%.1f bytes per day", DAYS, archiveNanos / 1e6, bytes,
+                bytes / (double) DAYS));
+
+        long[] nanos = new long[READS];
+        for (int i = 0; i < READS; i++) {
+            long from = startDate + (i * 11 % (DAYS - RANGE_DAYS)) * DAY_IN_MILLIS;
+            Uri uri = HistoryEntry.buildHistoryLocation(HISTORY_LOCATION, from,
+                    from + (RANGE_DAYS - 1) * DAY_IN_MILLIS);
+            long start = System.nanoTime();
+            Cursor cursor = getContext().getContentResolver().query(uri, null, null, null, null);
+            assertNotNull(cursor);
+            assertTrue(cursor.getCount() >= RANGE_DAYS - 1);
+            cursor.close();
+            nanos[i] = System.nanoTime() - start;
+        }
+        ProviderReadWriteBenchmark.report("30-day history range", nanos);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+/*
+    Times the preference reads a forecast row bind makes (the art pack, then the units for the
+    high and the low) through the preferences snapshot and the way Utility used to make them,
+    going to SharedPreferences and resources on every call.  Each sample binds a screenful of
+    rows; compare the logged percentiles across builds.
+ */
+public class PreferenceReadBenchmark extends AndroidTestCase {
+
+    private static final int SAMPLES = 200;
+    private static final int ROWS_PER_SAMPLE = 14;
+
+    public void testRowBindReads() {
+        // Warm both up so the first preferences load isn't in the samples.
+        int sink = bindWithSnapshot() + bindWithPreferences();
+
+        long[] snapshot = new long[SAMPLES];
+        long[] preferences = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            sink += bindWithSnapshot();
+            snapshot[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += bindWithPreferences();
+            preferences[i] = System.nanoTime() - start;
+        }
+        assertTrue(sink != 0);
+        ProviderReadWriteBenchmark.report("bind reads via snapshot", snapshot);
+        ProviderReadWriteBenchmark.report("bind reads via SharedPreferences", preferences);
+    }
+
+    private int bindWithSnapshot() {
+        Context context = getContext();
+        int sink = 0;
+        for (int row = 0; row < ROWS_PER_SAMPLE; row++) {
+            if (Utility.usingLocalGraphics(context)) sink++;
+            sink += Utility.formatTemperature(context, 20 + row).length();
+            sink += Utility.formatTemperature(context, 10 - row).length();
+        }
+        return sink;
+    }
+
+    private int bindWithPreferences() {
+        Context context = getContext();
+        int sink = 0;
+        for (int row = 0; row < ROWS_PER_SAMPLE; row++) {
+            if (usingLocalGraphics(context)) sink++;
+            sink += formatTemperature(context, 20 + row).length();
+            sink += formatTemperature(context, 10 - row).length();
+        }
+        return sink;
+    }
+
+    // What Utility did before the snapshot.
+
+    private static boolean usingLocalGraphics(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        return prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack).equals(sunshineArtPack);
+    }
+
+    private static boolean isMetric(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    private static String formatTemperature(Context context, double temperature) {
+        if (!isMetric(context)) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(context.getString(R.string.format_temperature), temperature);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherDbHelper;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/*
+    Measures how long the forecast loader's query takes while the sync adapter is writing.  Run it
+    on a device and compare the logged percentiles across builds; it only fails if the writer
+    or the reads break outright.
+
+    The provider answers repeated forecast queries from its in-memory snapshot, so the reads go
+    to the database through their own WeatherDbHelper, running the query the provider runs on a
+    snapshot miss.  That keeps SQLite's reader/writer locking in what is measured.
+ */
+public class ProviderReadWriteBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = ProviderReadWriteBenchmark.class.getSimpleName();
+
+    static final String BENCHMARK_LOCATION = "benchmark-location";
+    static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    static final int DAYS_PER_SYNC = 14;
+    private static final int READS = 200;
+
+    // The join and selection the provider queries for a location from a start date.
+    private static final String FORECAST_TABLES = WeatherEntry.TABLE_NAME + " INNER JOIN " +
+            LocationEntry.TABLE_NAME + " ON " +
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " = " +
+            LocationEntry.TABLE_NAME + "." + LocationEntry._ID;
+    private static final String FORECAST_SELECTION =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherEntry.COLUMN_DATE + " >= ?";
+
+    // Matches the columns ForecastFragment's loader asks for.
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private volatile boolean mWriting;
+    private volatile Throwable mWriterError;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(getContext());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(getContext());
+        super.tearDown();
+    }
+
+    public void testQueryLatencyDuringSync() throws Exception {
+        final long locationId = TestUtilities.insertLocation(getContext(), BENCHMARK_LOCATION);
+        final long startDate = WeatherEntry.getStartDateFromUri(
+                WeatherEntry.buildWeatherLocationWithStartDate(BENCHMARK_LOCATION,
+                        System.currentTimeMillis()));
+        getContext().getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createSyncValues(locationId, startDate, 0));
+
+        SQLiteDatabase db = new WeatherDbHelper(getContext()).getReadableDatabase();
+        long[] idle;
+        long[] contended;
+        try {
+            idle = measureReads(db, startDate);
+
+            mWriting = true;
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int pass = 1;
+                    try {
+                        while (mWriting) {
+                            getContext().getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                                    createSyncValues(locationId, startDate, pass++));
+                        }
+                    } catch (Throwable t) {
+                        mWriterError = t;
+                    }
+                }
+            }, "BenchmarkWriter");
+            writer.start();
+
+            try {
+                contended = measureReads(db, startDate);
+            } finally {
+                mWriting = false;
+                writer.join();
+            }
+        } finally {
+            db.close();
+        }
+        if (mWriterError != null) {
+            throw new AssertionError(mWriterError);
+        }
+
+        report("idle", idle);
+        report("during sync", contended);
+    }
+
+    private long[] measureReads(SQLiteDatabase db, long startDate) {
+        String[] selectionArgs = {BENCHMARK_LOCATION, Long.toString(startDate)};
+        long[] nanos = new long[READS];
+        for (int i = 0; i < READS; i++) {
+            long start = System.nanoTime();
+            Cursor cursor = db.query(FORECAST_TABLES, FORECAST_COLUMNS, FORECAST_SELECTION,
+                    selectionArgs, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertNotNull(cursor);
+            // Loaders fill the cursor window on the background thread, so include that too.
+            assertEquals(DAYS_PER_SYNC, cursor.getCount());
+            cursor.close();
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    static void report(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        Log.i(LOG_TAG, String.format("%s: median %.3fms, p95 %.3fms, max %.3fms (%d samples)",
+                label,
+                sorted[sorted.length / 2] / 1e6,
+                sorted[(int) (sorted.length * 0.95)] / 1e6,
+                sorted[sorted.length - 1] / 1e6,
+                sorted.length));
+    }
+
+    static ContentValues[] createSyncValues(long locationId, long startDate, int pass) {
+        ContentValues[] values = new ContentValues[DAYS_PER_SYNC];
+        for (int i = 0; i < DAYS_PER_SYNC; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, startDate + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2 + 0.01 * i);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3 - 0.01 * i);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + (pass % 5));
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - (pass % 5));
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5 + 0.2 * i);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+}
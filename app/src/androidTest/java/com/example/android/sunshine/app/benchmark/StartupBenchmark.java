@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.support.v7.widget.RecyclerView;
+import android.test.InstrumentationTestCase;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Launches the main activity over a stored forecast and times how long it takes for the first
+    forecast row to be laid out.  The process is already running, so this leaves out process
+    start, which can't be timed from inside it, but covers everything the activity does before
+    the user sees a forecast.  Compare the logged percentiles across builds.
+ */
+public class StartupBenchmark extends InstrumentationTestCase {
+
+    private static final int LAUNCHES = 10;
+    private static final long TIMEOUT_NANOS = 10L * 1000 * 1000 * 1000;
+
+    private Context mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        TestUtilities.deleteAllRecords(mContext);
+        String locationSetting = Utility.getPreferredLocation(mContext);
+        long locationId = TestUtilities.insertLocation(mContext, locationSetting);
+        long startDate = WeatherEntry.getStartDateFromUri(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                        System.currentTimeMillis()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createForecastValues(locationId, startDate,
+                        ProviderReadWriteBenchmark.DAYS_PER_SYNC));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    public void testTimeToFirstForecastRow() throws Exception {
+        long[] nanos = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            Intent intent = new Intent(mContext, MainActivity.class)
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            long start = System.nanoTime();
+            Activity activity = getInstrumentation().startActivitySync(intent);
+            RecyclerView list = (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+            // Polled rather than listened for, so the benchmark adds no work to the frames it
+            // is timing.
+            while (list.getChildCount() == 0 || list.isLayoutRequested()) {
+                assertTrue("Error: No forecast row was shown",
+                        System.nanoTime() - start < TIMEOUT_NANOS);
+                Thread.sleep(1);
+            }
+            nanos[i] = System.nanoTime() - start;
+            activity.finish();
+            getInstrumentation().waitForIdleSync();
+        }
+        ProviderReadWriteBenchmark.report("time to first forecast row", nanos);
+    }
+}
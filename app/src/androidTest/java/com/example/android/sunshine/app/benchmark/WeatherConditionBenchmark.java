@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.LegacyWeatherConditions;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+/*
+    Times the condition lookups a forecast row bind makes (icon or art, art URL, description)
+    with the lookup tables and with the branch chains they replaced.  Each sample is a pass over
+    a fortnight of typical conditions; compare the logged percentiles across builds.
+ */
+public class WeatherConditionBenchmark extends AndroidTestCase {
+
+    private static final int SAMPLES = 200;
+    private static final int PASSES_PER_SAMPLE = 100;
+    // Clear, clouds, rain and a storm, the conditions a fortnight usually has.
+    private static final int[] FORTNIGHT = {800, 801, 802, 803, 804, 500, 501, 800, 800, 801,
+            211, 520, 804, 800};
+
+    public void testRowLookups() {
+        // Warm both up so class loading and the first art pack build aren't in the samples.
+        int sink = runTables() + runLegacy();
+
+        long[] tables = new long[SAMPLES];
+        long[] legacy = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            sink += runTables();
+            tables[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += runLegacy();
+            legacy[i] = System.nanoTime() - start;
+        }
+        assertTrue(sink != 0);
+        ProviderReadWriteBenchmark.report("condition tables", tables);
+        ProviderReadWriteBenchmark.report("condition branch chains", legacy);
+    }
+
+    private int runTables() {
+        int sink = 0;
+        for (int pass = 0; pass < PASSES_PER_SAMPLE; pass++) {
+            for (int id : FORTNIGHT) {
+                sink += Utility.getArtResourceForWeatherCondition(id);
+                sink += Utility.getIconResourceForWeatherCondition(id);
+                sink += Utility.getImageUrlForWeatherCondition(id).length();
+                sink += Utility.getStringForWeatherCondition(getContext(), id).length();
+                sink += Utility.getArtUrlForWeatherCondition(getContext(), id).length();
+            }
+        }
+        return sink;
+    }
+
+    private int runLegacy() {
+        int sink = 0;
+        for (int pass = 0; pass < PASSES_PER_SAMPLE; pass++) {
+            for (int id : FORTNIGHT) {
+                sink += LegacyWeatherConditions.getArtResourceForWeatherCondition(id);
+                sink += LegacyWeatherConditions.getIconResourceForWeatherCondition(id);
+                sink += LegacyWeatherConditions.getImageUrlForWeatherCondition(id).length();
+                sink += LegacyWeatherConditions.getStringForWeatherCondition(getContext(), id)
+                        .length();
+                sink += legacyArtUrl(id).length();
+            }
+        }
+        return sink;
+    }
+
+    // Reads the art pack the way Utility does, so the difference is the lookup alone.
+    private String legacyArtUrl(int id) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getContext());
+        String pack = prefs.getString(getContext().getString(R.string.pref_art_pack_key),
+                getContext().getString(R.string.pref_art_pack_sunshine));
+        return LegacyWeatherConditions.getArtUrlForWeatherCondition(pack, id);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.LegacyFormatting;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Times the formatting a forecast row bind does (its day label, high and low) through the
+    formatter and through the per-call formatting it replaced.  Each sample formats a fortnight
+    of rows; compare the logged percentiles across builds.
+ */
+public class WeatherFormatterBenchmark extends AndroidTestCase {
+
+    private static final int SAMPLES = 200;
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final long[] mDates = new long[14];
+    private final double[] mHighs = new double[14];
+    private final double[] mLows = new double[14];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < mDates.length; i++) {
+            mDates[i] = today + i * DAY_IN_MILLIS;
+            mHighs[i] = 21.3 + 0.7 * i;
+            mLows[i] = 9.6 - 0.9 * i;
+        }
+    }
+
+    public void testRowFormatting() {
+        // Warm both up so the formatter's first build isn't in the samples.
+        int sink = runFormatter() + runLegacy();
+
+        long[] formatter = new long[SAMPLES];
+        long[] legacy = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            sink += runFormatter();
+            formatter[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += runLegacy();
+            legacy[i] = System.nanoTime() - start;
+        }
+        assertTrue(sink != 0);
+        ProviderReadWriteBenchmark.report("row formatting via formatter", formatter);
+        ProviderReadWriteBenchmark.report("row formatting per call", legacy);
+    }
+
+    private int runFormatter() {
+        int sink = 0;
+        for (int i = 0; i < mDates.length; i++) {
+            sink += Utility.getFriendlyDayString(getContext(), mDates[i], i == 0).length();
+            sink += Utility.formatTemperature(getContext(), mHighs[i], true).length();
+            sink += Utility.formatTemperature(getContext(), mLows[i], true).length();
+        }
+        return sink;
+    }
+
+    private int runLegacy() {
+        int sink = 0;
+        for (int i = 0; i < mDates.length; i++) {
+            sink += LegacyFormatting.getFriendlyDayString(getContext(), mDates[i], i == 0)
+                    .length();
+            sink += LegacyFormatting.formatTemperature(getContext(), mHighs[i], true).length();
+            sink += LegacyFormatting.formatTemperature(getContext(), mLows[i], true).length();
+        }
+        return sink;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Counts how often observers registered the way loaders register are woken by the provider's
+    writes.  Each onChange here is a re-query a real loader would have run.
+ */
+public class TestChangeNotifications extends AndroidTestCase {
+
+    private static final String LOG_TAG = TestChangeNotifications.class.getSimpleName();
+
+    private static final String OTHER_LOCATION = "10001";
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Notifications arrive asynchronously, so once the expected ones are in, wait this long to
+    // be sure no more are coming.
+    private static final long QUIET_MILLIS = 500;
+
+    private long mLocationRowId;
+    private long mOtherLocationRowId;
+    private final List<CountingObserver> mObservers = new ArrayList<CountingObserver>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        mLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        mOtherLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, otherLocation));
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(mLocationRowId));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(mOtherLocationRowId));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (CountingObserver observer : mObservers) {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.mThread.quit();
+        }
+        mObservers.clear();
+        super.tearDown();
+    }
+
+    public void testSyncWakesOnlyItsLocation() {
+        CountingObserver forecast = observe(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        CountingObserver otherForecast = observe(WeatherEntry.buildWeatherLocation(OTHER_LOCATION));
+        CountingObserver locations = observe(LocationEntry.CONTENT_URI);
+
+        // What SunshineSyncAdapter does: one bulkInsert of the new forecast, one purge of the
+        // days that are over.
+        ContentValues[] forecastValues = TestProvider.createBulkInsertWeatherValues(mLocationRowId);
+        for (ContentValues values : forecastValues) {
+            values.put(WeatherEntry.COLUMN_DATE,
+                    values.getAsLong(WeatherEntry.COLUMN_DATE) + 2 * DAY_IN_MILLIS);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecastValues);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(mLocationRowId), Long.toString(
+                        WeatherContract.normalizeDate(TestUtilities.TEST_DATE + 2 * DAY_IN_MILLIS))});
+
+        forecast.waitForCount(2);
+        Log.d(LOG_TAG, "Re-queries per sync: own location " + forecast.getCount()
+                + ", other location " + otherForecast.getCount()
+                + ", location list " + locations.getCount());
+        assertEquals("Error: Each sync write should wake the forecast exactly once",
+                2, forecast.getCount());
+        assertEquals("Error: Sync woke an observer of another location",
+                0, otherForecast.getCount());
+        assertEquals("Error: Weather writes woke the location observer", 0, locations.getCount());
+    }
+
+    public void testSingleRowInsertWakesOnlyItsDay() {
+        CountingObserver today = observe(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE));
+        CountingObserver tomorrow = observe(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE + DAY_IN_MILLIS));
+        CountingObserver forecast = observe(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+
+        ContentValues updated = TestUtilities.createWeatherValues(mLocationRowId);
+        updated.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, updated);
+
+        today.waitForCount(1);
+        forecast.waitForCount(1);
+        assertEquals(1, today.getCount());
+        assertEquals(1, forecast.getCount());
+        assertEquals("Error: Insert woke the detail view for another day", 0, tomorrow.getCount());
+    }
+
+    public void testApplyBatchNotifiesOnce() throws Exception {
+        CountingObserver forecast = observe(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        CountingObserver otherForecast = observe(WeatherEntry.buildWeatherLocation(OTHER_LOCATION));
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (ContentValues values : TestProvider.createBulkInsertWeatherValues(mLocationRowId)) {
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values).build());
+        }
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        forecast.waitForCount(1);
+        assertEquals("Error: Batch of " + operations.size() + " inserts should wake once",
+                1, forecast.getCount());
+        assertEquals(0, otherForecast.getCount());
+    }
+
+    private CountingObserver observe(Uri uri) {
+        CountingObserver observer = CountingObserver.create();
+        mObservers.add(observer);
+        // Registered the way Cursor.setNotificationUri registers a loader's cursor.
+        mContext.getContentResolver().registerContentObserver(uri, true, observer);
+        return observer;
+    }
+
+    static class CountingObserver extends ContentObserver {
+        final HandlerThread mThread;
+        private int mCount;
+
+        static CountingObserver create() {
+            HandlerThread ht = new HandlerThread("CountingObserverThread");
+            ht.start();
+            return new CountingObserver(ht);
+        }
+
+        private CountingObserver(HandlerThread ht) {
+            super(new Handler(ht.getLooper()));
+            mThread = ht;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            synchronized (this) {
+                mCount++;
+            }
+        }
+
+        synchronized int getCount() {
+            return mCount;
+        }
+
+        void waitForCount(final int expected) {
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return getCount() >= expected;
+                }
+            }.run();
+            try {
+                Thread.sleep(QUIET_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
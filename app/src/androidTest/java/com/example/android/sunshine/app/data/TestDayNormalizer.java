@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.util.TimeZone;
+
+/*
+    Checks the normalizer against Time, which it replaced, from 2000 through 2040 in every zone the
+    device knows.  Days away from a zone's transitions all work the same way, so those are only
+    sampled; the days around each transition are checked hour by hour.
+ */
+public class TestDayNormalizer extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long HOUR_IN_MILLIS = 60L * 60 * 1000;
+    // 2000-01-01 and 2041-01-01.
+    private static final long FIRST_DAY = 10957;
+    private static final long END_DAY = 25933;
+    // Offsets are compared a week apart to find the weeks with transitions, so a change undone
+    // within the same week would be missed.  Daylight saving lasts months.
+    private static final int SCAN_DAYS = 7;
+    private static final int SAMPLE_DAYS = 30;
+
+    private TimeZone mDefaultZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        useZone(mDefaultZone);
+        super.tearDown();
+    }
+
+    private static void useZone(TimeZone zone) {
+        TimeZone.setDefault(zone);
+        DayNormalizer.onTimeZoneChanged();
+    }
+
+    public void testMatchesTimeInEveryZone() {
+        for (String id : TimeZone.getAvailableIDs()) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            useZone(zone);
+            for (long week = FIRST_DAY; week < END_DAY; week += SCAN_DAYS) {
+                long weekStart = week * DAY_IN_MILLIS;
+                if (zone.getOffset(weekStart)
+                        == zone.getOffset(weekStart + SCAN_DAYS * DAY_IN_MILLIS)) {
+                    continue;
+                }
+                for (long day = week; day < week + SCAN_DAYS; day++) {
+                    long midnight = day * DAY_IN_MILLIS;
+                    if (zone.getOffset(midnight) == zone.getOffset(midnight + DAY_IN_MILLIS)) {
+                        continue;
+                    }
+                    // The local days either side of the change, whichever way the zone is off
+                    // UTC, and the ones it skipped or repeated.
+                    for (long date = midnight - DAY_IN_MILLIS; date < midnight + 2 * DAY_IN_MILLIS;
+                         date += HOUR_IN_MILLIS) {
+                        checkDate(id, date);
+                    }
+                }
+            }
+            for (long day = FIRST_DAY; day < END_DAY; day += SAMPLE_DAYS) {
+                // Midnight and noon UTC fall on different local days in most zones.
+                long midnight = day * DAY_IN_MILLIS;
+                checkDate(id, midnight);
+                checkDate(id, midnight + 12 * HOUR_IN_MILLIS);
+            }
+        }
+    }
+
+    public void testDaysMatchTheSyncsArithmetic() {
+        for (String id : TimeZone.getAvailableIDs()) {
+            useZone(TimeZone.getTimeZone(id));
+            // What the sync did: count days at today's offset, then start each one with Time.
+            Time now = new Time();
+            now.setToNow();
+            long currentTime = System.currentTimeMillis();
+            int julianStartDay = Time.getJulianDay(currentTime, now.gmtoff);
+            assertEquals("Error: Today differs in " + id,
+                    julianStartDay - Time.EPOCH_JULIAN_DAY, DayNormalizer.epochDay(currentTime));
+            Time dayTime = new Time();
+            for (int i = -1; i < 14; i++) {
+                assertEquals("Error: Day " + i + " starts differently in " + id,
+                        dayTime.setJulianDay(julianStartDay + i),
+                        DayNormalizer.startOfDay(julianStartDay - Time.EPOCH_JULIAN_DAY + i));
+            }
+        }
+    }
+
+    public void testKeepsTheZoneUntilToldItChanged() {
+        long date = 1419033600000L; // 2014-12-20 00:00 UTC
+        useZone(TimeZone.getTimeZone("America/Los_Angeles"));
+        long losAngeles = legacyNormalizeDate(date);
+        assertEquals(losAngeles, DayNormalizer.normalizeDate(date));
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+        assertEquals("Error: The zone was looked up again", losAngeles,
+                DayNormalizer.normalizeDate(date));
+        DayNormalizer.onTimeZoneChanged();
+        assertEquals(legacyNormalizeDate(date), DayNormalizer.normalizeDate(date));
+    }
+
+    private static void checkDate(String id, long date) {
+        assertEquals("Error: Normalized date differs for " + date + " in " + id,
+                legacyNormalizeDate(date), WeatherContract.normalizeDate(date));
+    }
+
+    // WeatherContract.normalizeDate before DayNormalizer.
+    private static long legacyNormalizeDate(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.util.List;
+
+/*
+    Builds a database the way each historical version of the app left it, opens it with the
+    current WeatherDbHelper and checks that the rows survived the upgrade.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    private static final int FIXTURE_DAYS = 3;
+
+    public void setUp() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void tearDown() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void testMigrationPathIsComplete() {
+        for (int version = 1; version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            assertNotNull("Error: No migration path from version " + version,
+                    DbMigration.findPath(WeatherDbHelper.MIGRATIONS, version,
+                            WeatherDbHelper.DATABASE_VERSION));
+        }
+    }
+
+    public void testMigrateEveryHistoricalVersion() {
+        for (int version = 1; version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+            createFixture(version);
+
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+            List<DbMigration.Timing> timings = dbHelper.getLastUpgradeTimings();
+            assertEquals("Error: Unexpected number of migration steps from version " + version,
+                    WeatherDbHelper.DATABASE_VERSION - version, timings.size());
+
+            assertEquals("Error: Location rows lost migrating from version " + version,
+                    1, DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+            assertEquals("Error: Weather rows lost migrating from version " + version,
+                    FIXTURE_DAYS, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+            assertEquals("Error: History table missing after migrating from version " + version,
+                    0, DatabaseUtils.queryNumEntries(db, HistoryEntry.TABLE_NAME));
+
+            validateQueries(db, version);
+            dbHelper.close();
+        }
+    }
+
+    public void testMigratedWeatherTableReplacesDuplicates() {
+        createFixture(1);
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // Same (date, location) as an existing row, so the UNIQUE ... ON CONFLICT REPLACE
+        // constraint from the current schema should swap it in rather than add a row.
+        long locationId = queryLocationId(db);
+        ContentValues duplicate = TestUtilities.createWeatherValues(locationId);
+        duplicate.put(WeatherEntry.COLUMN_SHORT_DESC, "Replaced");
+        assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, duplicate) != -1);
+
+        assertEquals("Error: Duplicate weather row was not replaced",
+                FIXTURE_DAYS, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        dbHelper.close();
+    }
+
+    public void testFailedMigrationRecreatesDatabase() {
+        createFixture(1);
+        // Version 1 had no NOT NULL constraints, so a row like this could be left behind.  The
+        // version 2 rebuild can't copy it.
+        SQLiteDatabase fixture = SQLiteDatabase.openDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        ContentValues broken = TestUtilities.createWeatherValues(queryLocationId(fixture));
+        broken.put(WeatherEntry.COLUMN_DATE,
+                TestUtilities.TEST_DATE + FIXTURE_DAYS * 24L * 60 * 60 * 1000);
+        broken.putNull(WeatherEntry.COLUMN_SHORT_DESC);
+        assertTrue(fixture.insert(WeatherEntry.TABLE_NAME, null, broken) != -1);
+        fixture.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals("Error: Rows kept from a failed migration",
+                0, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, HistoryEntry.TABLE_NAME));
+        assertEquals("Error: Tables left over from the failed migration", 0,
+                DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master" +
+                        " WHERE type = 'table' AND name LIKE '%_old'", null));
+
+        // Usable, and opening it again doesn't try the migration a second time.
+        long locationId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(locationId != -1);
+        dbHelper.close();
+        dbHelper = new WeatherDbHelper(mContext);
+        assertEquals(1, DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(),
+                LocationEntry.TABLE_NAME));
+        dbHelper.close();
+    }
+
+    // Runs the same join the provider uses for the forecast list and checks the first day.
+    private void validateQueries(SQLiteDatabase db, int version) {
+        Cursor cursor = db.rawQuery("SELECT " + WeatherEntry.COLUMN_DATE + ", " +
+                        WeatherEntry.COLUMN_SHORT_DESC + ", " + LocationEntry.COLUMN_CITY_NAME +
+                        " FROM " + WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                        LocationEntry.TABLE_NAME + " ON " + WeatherEntry.TABLE_NAME + "." +
+                        WeatherEntry.COLUMN_LOC_KEY + " = " + LocationEntry.TABLE_NAME + "." +
+                        LocationEntry._ID + " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING +
+                        " = ? ORDER BY " + WeatherEntry.COLUMN_DATE + " ASC",
+                new String[]{TestUtilities.TEST_LOCATION});
+        try {
+            assertEquals("Error: Forecast join returned the wrong rows after migrating from version "
+                    + version, FIXTURE_DAYS, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(TestUtilities.TEST_DATE, cursor.getLong(0));
+            assertEquals("Asteroids", cursor.getString(1));
+            assertEquals("North Pole", cursor.getString(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long queryLocationId(SQLiteDatabase db) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{LocationEntry._ID},
+                null, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Writes a database in the shape a given schema version left it.  When you add a migration
+        step, add the schema it starts from here.  Each fixture is spelled out as it shipped, so
+        later changes to the current schema can't change what the older versions look like.
+     */
+    private void createFixture(int version) {
+        File path = mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+        path.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(path, null);
+        try {
+            switch (version) {
+                case 1:
+                    // The migration copies the columns both versions share, so the version 1
+                    // fixture keeps the same columns without any of the constraints.
+                    db.execSQL("CREATE TABLE location (" +
+                            "_id INTEGER PRIMARY KEY," +
+                            "location_setting TEXT, " +
+                            "city_name TEXT, " +
+                            "coord_lat REAL, " +
+                            "coord_long REAL);");
+                    db.execSQL("CREATE TABLE weather (" +
+                            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "location_id INTEGER, " +
+                            "date INTEGER, " +
+                            "short_desc TEXT, " +
+                            "weather_id INTEGER," +
+                            "min REAL, " +
+                            "max REAL, " +
+                            "humidity REAL, " +
+                            "pressure REAL, " +
+                            "wind REAL, " +
+                            "degrees REAL);");
+                    break;
+                case 2:
+                    db.execSQL("CREATE TABLE location (" +
+                            "_id INTEGER PRIMARY KEY," +
+                            "location_setting TEXT UNIQUE NOT NULL, " +
+                            "city_name TEXT NOT NULL, " +
+                            "coord_lat REAL NOT NULL, " +
+                            "coord_long REAL NOT NULL " +
+                            " );");
+                    db.execSQL("CREATE TABLE weather (" +
+                            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "location_id INTEGER NOT NULL, " +
+                            "date INTEGER NOT NULL, " +
+                            "short_desc TEXT NOT NULL, " +
+                            "weather_id INTEGER NOT NULL," +
+                            "min REAL NOT NULL, " +
+                            "max REAL NOT NULL, " +
+                            "humidity REAL NOT NULL, " +
+                            "pressure REAL NOT NULL, " +
+                            "wind REAL NOT NULL, " +
+                            "degrees REAL NOT NULL, " +
+                            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                            " UNIQUE (date, location_id) ON CONFLICT REPLACE);");
+                    break;
+                default:
+                    fail("Error: No fixture for schema version " + version);
+            }
+
+            long locationId = db.insert(LocationEntry.TABLE_NAME, null,
+                    TestUtilities.createNorthPoleLocationValues());
+            assertTrue(locationId != -1);
+            for (int i = 0; i < FIXTURE_DAYS; i++) {
+                ContentValues weatherValues = TestUtilities.createWeatherValues(locationId);
+                weatherValues.put(WeatherEntry.COLUMN_DATE,
+                        TestUtilities.TEST_DATE + i * 24L * 60 * 60 * 1000);
+                assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+            }
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+}
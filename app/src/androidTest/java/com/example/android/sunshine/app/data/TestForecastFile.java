@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+public class TestForecastFile extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int DAYS = 14;
+
+    private File mFile;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(mContext.getCacheDir(), "test-" + ForecastFile.FILE_NAME);
+        mFile.delete();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testRoundTrip() {
+        new ForecastFile(mFile).write(TestUtilities.TEST_LOCATION, createDays(mToday, DAYS));
+
+        // A second instance stands in for another reader with its own mapping.
+        List<ForecastFile.Day> days = new ForecastFile(mFile)
+                .read(TestUtilities.TEST_LOCATION, System.currentTimeMillis());
+        assertNotNull(days);
+        assertEquals(DAYS, days.size());
+        for (int i = 0; i < DAYS; i++) {
+            ForecastFile.Day day = days.get(i);
+            assertEquals(WeatherContract.normalizeDate(mToday + i * DAY_IN_MILLIS), day.date);
+            assertEquals(800 + i, day.weatherId);
+            assertEquals(20.5 + i, day.high);
+            assertEquals(10.25 - i, day.low);
+            assertEquals("Clear " + i, day.description);
+        }
+        assertEquals("Error: The file should never change size",
+                ForecastFile.FILE_SIZE, mFile.length());
+    }
+
+    public void testSkipsDaysBeforeToday() {
+        ForecastFile file = new ForecastFile(mFile);
+        file.write(TestUtilities.TEST_LOCATION, createDays(mToday - 2 * DAY_IN_MILLIS, DAYS));
+
+        ForecastFile.Day today = file.readToday(TestUtilities.TEST_LOCATION,
+                System.currentTimeMillis());
+        assertNotNull(today);
+        assertEquals(mToday, today.date);
+        assertEquals(DAYS - 2,
+                file.read(TestUtilities.TEST_LOCATION, System.currentTimeMillis()).size());
+    }
+
+    public void testFallsBackWhenItCantAnswer() {
+        ForecastFile file = new ForecastFile(mFile);
+        assertNull("Error: Read a file that was never written",
+                file.read(TestUtilities.TEST_LOCATION, System.currentTimeMillis()));
+
+        file.write(TestUtilities.TEST_LOCATION, createDays(mToday, DAYS));
+        assertNull("Error: Read another location's forecast",
+                file.read("10001", System.currentTimeMillis()));
+        assertNull("Error: Read a forecast that is over",
+                file.read(TestUtilities.TEST_LOCATION,
+                        System.currentTimeMillis() + (DAYS + 1) * DAY_IN_MILLIS));
+
+        file.invalidate(TestUtilities.TEST_LOCATION);
+        assertNull("Error: Read an invalidated forecast",
+                file.read(TestUtilities.TEST_LOCATION, System.currentTimeMillis()));
+    }
+
+    public void testInvalidateLeavesOtherLocations() {
+        ForecastFile file = new ForecastFile(mFile);
+        file.write(TestUtilities.TEST_LOCATION, createDays(mToday, DAYS));
+        file.invalidate("10001");
+        assertNotNull(file.read(TestUtilities.TEST_LOCATION, System.currentTimeMillis()));
+    }
+
+    public void testRejectsWriteInProgressAndCorruption() throws Exception {
+        new ForecastFile(mFile).write(TestUtilities.TEST_LOCATION, createDays(mToday, DAYS));
+
+        RandomAccessFile raw = new RandomAccessFile(mFile, "rw");
+        try {
+            MappedByteBuffer buffer = raw.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    ForecastFile.FILE_SIZE);
+            buffer.order(ByteOrder.nativeOrder());
+
+            // An odd sequence number is a write that never finished.
+            int sequence = buffer.getInt(ForecastFile.OFFSET_SEQUENCE);
+            buffer.putInt(ForecastFile.OFFSET_SEQUENCE, sequence | 1);
+            assertNull("Error: Read a file mid-write", new ForecastFile(mFile)
+                    .read(TestUtilities.TEST_LOCATION, System.currentTimeMillis()));
+            buffer.putInt(ForecastFile.OFFSET_SEQUENCE, sequence);
+            assertNotNull(new ForecastFile(mFile)
+                    .read(TestUtilities.TEST_LOCATION, System.currentTimeMillis()));
+
+            // Flip a bit in the first day's date.
+            int offset = ForecastFile.HEADER_SIZE + 1;
+            buffer.put(offset, (byte) (buffer.get(offset) ^ 1));
+            assertNull("Error: Read a corrupt file", new ForecastFile(mFile)
+                    .read(TestUtilities.TEST_LOCATION, System.currentTimeMillis()));
+        } finally {
+            raw.close();
+        }
+    }
+
+    public void testLongDescriptionEmptiesFile() {
+        ForecastFile file = new ForecastFile(mFile);
+        file.write(TestUtilities.TEST_LOCATION, createDays(mToday, DAYS));
+        ContentValues[] days = createDays(mToday, DAYS);
+        days[3].put(WeatherEntry.COLUMN_SHORT_DESC,
+                new String(new char[ForecastFile.MAX_DESCRIPTION_BYTES + 1]).replace('\0', 'x'));
+        file.write(TestUtilities.TEST_LOCATION, days);
+        assertNull("Error: Kept the old forecast after a write that didn't fit",
+                file.read(TestUtilities.TEST_LOCATION, System.currentTimeMillis()));
+    }
+
+    static ContentValues[] createDays(long startDate, int count) {
+        ContentValues[] days = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = TestUtilities.createWeatherValues(1);
+            values.put(WeatherEntry.COLUMN_DATE, startDate + i * DAY_IN_MILLIS);
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 20.5 + i);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 10.25 - i);
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear " + i);
+            days[i] = values;
+        }
+        return days;
+    }
+}
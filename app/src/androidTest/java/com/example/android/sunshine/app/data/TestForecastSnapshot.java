@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that forecast queries served from a ForecastSnapshot return what the SQLite join would.
+ */
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // The columns ForecastFragment asks for.
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(mLocationRowId));
+    }
+
+    public void testResolveProjection() {
+        assertNotNull(ForecastSnapshot.resolveProjection(FORECAST_COLUMNS));
+        assertNull("Error: null projection should fall back to SQLite",
+                ForecastSnapshot.resolveProjection(null));
+        assertNull("Error: ambiguous _id should fall back to SQLite",
+                ForecastSnapshot.resolveProjection(new String[]{WeatherEntry._ID}));
+        assertNull("Error: unknown column should fall back to SQLite",
+                ForecastSnapshot.resolveProjection(new String[]{"sum(max)"}));
+    }
+
+    public void testSnapshotMatchesDatabase() {
+        long startDate = TestUtilities.TEST_DATE + 3 * DAY_IN_MILLIS;
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                startDate);
+        Cursor fromProvider = mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null,
+                null, WeatherEntry.COLUMN_DATE + " ASC");
+        Cursor fromDatabase = queryDatabase(WeatherEntry.getStartDateFromUri(uri));
+
+        assertEquals("Error: Snapshot returned the wrong number of rows",
+                fromDatabase.getCount(), fromProvider.getCount());
+        assertEquals(fromDatabase.getColumnCount(), fromProvider.getColumnCount());
+        while (fromDatabase.moveToNext()) {
+            assertTrue(fromProvider.moveToNext());
+            for (int i = 0; i < fromDatabase.getColumnCount(); i++) {
+                assertEquals(fromDatabase.getColumnName(i), fromProvider.getColumnName(i));
+                assertEquals(fromDatabase.getType(i), fromProvider.getType(i));
+                if (fromDatabase.getType(i) == Cursor.FIELD_TYPE_FLOAT) {
+                    // Snapshots keep weather values as floats.
+                    assertEquals(fromDatabase.getDouble(i), fromProvider.getDouble(i), 1e-4);
+                } else {
+                    assertEquals(fromDatabase.getString(i), fromProvider.getString(i));
+                }
+            }
+        }
+        fromDatabase.close();
+        fromProvider.close();
+    }
+
+    public void testSingleDateQuery() {
+        long date = TestUtilities.TEST_DATE + 2 * DAY_IN_MILLIS;
+        Uri uri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, date);
+        Cursor cursor = mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null,
+                null);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(WeatherEntry.getDateFromUri(uri), cursor.getLong(1));
+        cursor.close();
+
+        uri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE - 30 * DAY_IN_MILLIS);
+        cursor = mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null, null);
+        assertEquals("Error: Date with no forecast returned rows", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testInsertReplacesSnapshot() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null, null).close();
+
+        ContentValues updated = TestUtilities.createWeatherValues(mLocationRowId);
+        updated.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, updated);
+
+        Cursor cursor = mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null,
+                null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Snapshot not rebuilt after insert", "Meteors", cursor.getString(2));
+        cursor.close();
+    }
+
+    public void testRepeatedQueryIsAHit() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null, null).close();
+
+        long hits = getCacheStat(WeatherProvider.KEY_CACHE_HITS);
+        long misses = getCacheStat(WeatherProvider.KEY_CACHE_MISSES);
+        mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null, null).close();
+        assertEquals("Error: Repeated query wasn't served from the snapshot",
+                hits + 1, getCacheStat(WeatherProvider.KEY_CACHE_HITS));
+        assertEquals(misses, getCacheStat(WeatherProvider.KEY_CACHE_MISSES));
+    }
+
+    public void testWriteToOtherLocationKeepsSnapshot() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null, null).close();
+
+        long otherLocationRowId = TestUtilities.insertLocation(mContext, "10001");
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(otherLocationRowId));
+
+        long misses = getCacheStat(WeatherProvider.KEY_CACHE_MISSES);
+        mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null, null).close();
+        assertEquals("Error: Write to another location dropped the snapshot",
+                misses, getCacheStat(WeatherProvider.KEY_CACHE_MISSES));
+    }
+
+    public void testDeleteDropsSnapshot() {
+        Uri uri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null, null).close();
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        Cursor cursor = mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null,
+                null);
+        assertEquals("Error: Deleted rows still served from the snapshot", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testFormatRealMatchesCursorWindow() {
+        assertEquals("75", ForecastSnapshot.formatReal(75.0));
+        assertEquals("1.3", ForecastSnapshot.formatReal(1.3));
+        assertEquals("-147.353", ForecastSnapshot.formatReal(-147.353));
+        assertEquals("1.23457e+06", ForecastSnapshot.formatReal(1234567));
+        assertEquals("0.0001", ForecastSnapshot.formatReal(0.0001));
+    }
+
+    private long getCacheStat(String key) {
+        Bundle stats = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherProvider.METHOD_GET_CACHE_STATS, null, null);
+        assertNotNull(stats);
+        return stats.getLong(key);
+    }
+
+    private Cursor queryDatabase(long startDate) {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        return db.rawQuery("SELECT " + TextUtils.join(",", FORECAST_COLUMNS) +
+                        " FROM " + WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                        LocationEntry.TABLE_NAME + " ON " + WeatherEntry.TABLE_NAME + "." +
+                        WeatherEntry.COLUMN_LOC_KEY + " = " + LocationEntry.TABLE_NAME + "." +
+                        LocationEntry._ID + " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING +
+                        " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ? ORDER BY " +
+                        WeatherEntry.COLUMN_DATE + " ASC",
+                new String[]{TestUtilities.TEST_LOCATION, Long.toString(startDate)});
+    }
+}
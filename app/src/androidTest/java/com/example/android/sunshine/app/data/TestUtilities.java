@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.ContentObserver;
@@ -39,6 +40,10 @@ public class TestUtilities extends AndroidTestCase {
     static final String TEST_LOCATION = "99705";
     static final long TEST_DATE = 1419033600L;  // December 20th, 2014
 
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    // Clear, light clouds, clouds, rain and a storm, so consecutive rows differ in art.
+    private static final int[] FORECAST_CONDITIONS = {800, 801, 802, 500, 211};
+
     static void validateCursor(String error, Cursor valueCursor, ContentValues expectedValues) {
         assertTrue("Empty cursor returned. " + error, valueCursor.moveToFirst());
         validateCurrentRecord(error, valueCursor, expectedValues);
@@ -61,7 +66,7 @@ public class TestUtilities extends AndroidTestCase {
     /*
         Students: Use this to create some default weather values for your database tests.
      */
-    static ContentValues createWeatherValues(long locationRowId) {
+    public static ContentValues createWeatherValues(long locationRowId) {
         ContentValues weatherValues = new ContentValues();
         weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationRowId);
         weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, TEST_DATE);
@@ -81,7 +86,7 @@ public class TestUtilities extends AndroidTestCase {
         Students: You can uncomment this helper function once you have finished creating the
         LocationEntry part of the WeatherContract.
      */
-    static ContentValues createNorthPoleLocationValues() {
+    public static ContentValues createNorthPoleLocationValues() {
         // Create a new map of values, where column names are the keys
         ContentValues testValues = new ContentValues();
         testValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
@@ -111,6 +116,58 @@ public class TestUtilities extends AndroidTestCase {
         return locationRowId;
     }
 
+    /*
+        Inserts the North Pole under another location setting, through the provider, for tests
+        and benchmarks that need the forecast of a particular setting, such as the preferred
+        one.
+     */
+    public static long insertLocation(Context context, String locationSetting) {
+        ContentValues testValues = createNorthPoleLocationValues();
+        testValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        Uri uri = context.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, testValues);
+        return ContentUris.parseId(uri);
+    }
+
+    /*
+        A forecast of consecutive days from startDate, as a sync would store it.  The conditions
+        cycle so rows differ in icon and description, and the measurements drift from day to
+        day the way real ones do.
+     */
+    public static ContentValues[] createForecastValues(long locationRowId, long startDate,
+                                                       int days) {
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues weatherValues = createWeatherValues(locationRowId);
+            double seasonal = 10 * Math.sin(i / 58.0);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    startDate + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, (i * 37) % 360);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 60 + (i * 7) % 30);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                    1000 + (i * 3) % 25 + 0.01 * (i % 100));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                    15 + seasonal + 0.13 * (i % 7));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                    5 + seasonal - 0.17 * (i % 5));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                    2 + (i * 13) % 9 * 0.51);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    FORECAST_CONDITIONS[i % FORECAST_CONDITIONS.length]);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    /*
+        Deletes every weather and location row through the provider, which also empties the
+        history table, the forecast file and the provider's caches.
+     */
+    public static void deleteAllRecords(Context context) {
+        context.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        context.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
     /*
         Students: The functions we provide inside of TestProvider use this utility class to test
         the ContentObserver callbacks using the PollingCheck class that we grabbed from the Android
@@ -42,4 +42,18 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    public void testBuildWeatherLocationPage() {
+        Uri pageUri = WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                TEST_WEATHER_LOCATION, TEST_WEATHER_DATE, 50);
+        assertEquals(TEST_WEATHER_LOCATION,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(pageUri));
+        assertEquals("Error: Page key should not be normalized",
+                TEST_WEATHER_DATE, WeatherContract.WeatherEntry.getAfterDateFromUri(pageUri));
+        assertEquals(50, WeatherContract.WeatherEntry.getLimitFromUri(pageUri));
+
+        Uri locationUri = WeatherContract.WeatherEntry.buildWeatherLocation(TEST_WEATHER_LOCATION);
+        assertEquals(-1, WeatherContract.WeatherEntry.getAfterDateFromUri(locationUri));
+        assertEquals(0, WeatherContract.WeatherEntry.getLimitFromUri(locationUri));
+    }
 }
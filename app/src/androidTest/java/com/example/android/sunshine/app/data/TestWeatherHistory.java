@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestWeatherHistory extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long START_DATE = 1419033600000L;  // December 20th, 2014
+    private static final int DAYS = 20;
+
+    private long mLocationRowId;
+    private long mStartDate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+        mLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mStartDate = WeatherContract.normalizeDate(START_DATE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Deleting the locations drops their history too.
+        TestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    public void testCodecRoundTrip() {
+        List<WeatherHistoryCodec.Day> days = new ArrayList<WeatherHistoryCodec.Day>();
+        // Dates 23 and 25 hours apart, the way local midnights fall either side of a DST change.
+        long date = mStartDate;
+        for (int i = 0; i < 10; i++) {
+            days.add(new WeatherHistoryCodec.Day(date, 800 + i, -3.04 + i, 12.36 - i,
+                    80 + i, 1013.2, 4.5, 270));
+            date += DAY_IN_MILLIS + (i % 3 - 1) * 60 * 60 * 1000;
+        }
+
+        byte[] blob = WeatherHistoryCodec.encode(days);
+        assertDaysEqual(days, WeatherHistoryCodec.decode(blob));
+        assertTrue("Error: Ten days took " + blob.length + " bytes", blob.length < 10 * 16);
+    }
+
+    /*
+        Days as the daily forecast API sends them: temperatures, pressure and wind speed in
+        hundredths, humidity in whole percents and wind direction in whole degrees.  Every
+        value has to come back as the same double the JSON parser made of it.
+     */
+    public void testCodecKeepsApiValuesExactly() {
+        double[][] apiDays = {
+                // min, max, humidity, pressure, speed, deg
+                {4.51, 9.62, 91, 1017.65, 7.76, 237},
+                {-2.37, 3.08, 100, 1031.04, 0.21, 0},
+                {-17.93, -9.4, 64, 984.91, 13.47, 359},
+                {11.05, 24.99, 0, 1002.3, 3.6, 180},
+                {0.01, 0.07, 57, 1020.77, 24.15, 2},
+        };
+        int[] weatherIds = {500, 600, 601, 800, 211};
+        List<WeatherHistoryCodec.Day> days = new ArrayList<WeatherHistoryCodec.Day>();
+        for (int i = 0; i < apiDays.length; i++) {
+            double[] d = apiDays[i];
+            days.add(new WeatherHistoryCodec.Day(mStartDate + i * DAY_IN_MILLIS, weatherIds[i],
+                    d[0], d[1], d[2], d[3], d[4], d[5]));
+        }
+        assertDaysEqual(days, WeatherHistoryCodec.decode(WeatherHistoryCodec.encode(days)));
+    }
+
+    private static void assertDaysEqual(List<WeatherHistoryCodec.Day> expectedDays,
+                                        List<WeatherHistoryCodec.Day> actualDays) {
+        assertEquals(expectedDays.size(), actualDays.size());
+        for (int i = 0; i < expectedDays.size(); i++) {
+            WeatherHistoryCodec.Day expected = expectedDays.get(i);
+            WeatherHistoryCodec.Day actual = actualDays.get(i);
+            assertEquals(expected.date, actual.date);
+            assertEquals(expected.weatherId, actual.weatherId);
+            assertEquals(expected.min, actual.min, 0);
+            assertEquals(expected.max, actual.max, 0);
+            assertEquals(expected.humidity, actual.humidity, 0);
+            assertEquals(expected.pressure, actual.pressure, 0);
+            assertEquals(expected.wind, actual.wind, 0);
+            assertEquals(expected.degrees, actual.degrees, 0);
+        }
+    }
+
+    public void testCodecRejectsUnknownVersion() {
+        try {
+            WeatherHistoryCodec.decode(new byte[]{99, 0});
+            fail("Error: Decoded a blob from an unknown format version");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testArchiveMovesPastDays() {
+        ContentValues[] values = insertDays(mStartDate, DAYS);
+        long cutoff = mStartDate + 9 * DAY_IN_MILLIS;
+
+        assertEquals(10, archive(cutoff));
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        assertEquals("Error: Archived days were left in the weather table",
+                DAYS - 10, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        assertTrue(DatabaseUtils.queryNumEntries(db, HistoryEntry.TABLE_NAME) > 0);
+        db.close();
+
+        Cursor cursor = queryHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(10, cursor.getCount());
+        int dateColumn = cursor.getColumnIndex(WeatherEntry.COLUMN_DATE);
+        int maxColumn = cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP);
+        long previousDate = Long.MIN_VALUE;
+        for (int i = 0; cursor.moveToNext(); i++) {
+            long date = cursor.getLong(dateColumn);
+            assertTrue("Error: History out of order or past the cutoff",
+                    date > previousDate && date <= cutoff);
+            previousDate = date;
+            assertEquals(values[i].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    cursor.getDouble(maxColumn), 0.005);
+        }
+        cursor.close();
+    }
+
+    public void testArchiveMergesIntoExistingMonth() {
+        insertDays(mStartDate, DAYS);
+        archive(mStartDate + 2 * DAY_IN_MILLIS);
+        archive(mStartDate + 5 * DAY_IN_MILLIS);
+
+        Cursor cursor = queryHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals("Error: The second archive didn't merge into the first", 6, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testArchiveOverwritesUnreadableMonth() {
+        insertDays(mStartDate, DAYS);
+        ContentValues month = new ContentValues();
+        month.put(HistoryEntry.COLUMN_LOC_KEY, mLocationRowId);
+        month.put(HistoryEntry.COLUMN_MONTH, WeatherHistoryCodec.monthOf(mStartDate));
+        month.put(HistoryEntry.COLUMN_DAYS, new byte[]{99, 0});
+        month.put(HistoryEntry.COLUMN_DAY_COUNT, 0);
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        assertTrue(db.insert(HistoryEntry.TABLE_NAME, null, month) != -1);
+        db.close();
+
+        assertEquals("Error: An unreadable month stopped the archive",
+                3, archive(mStartDate + 2 * DAY_IN_MILLIS));
+        Cursor cursor = queryHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(3, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testRangeQueryReturnsOnlyRange() {
+        insertDays(mStartDate, DAYS);
+        archive(mStartDate + (DAYS - 1) * DAY_IN_MILLIS);
+
+        long from = mStartDate + 3 * DAY_IN_MILLIS;
+        long to = mStartDate + 15 * DAY_IN_MILLIS;
+        Cursor cursor = queryHistory(from, to);
+        assertEquals(13, cursor.getCount());
+        while (cursor.moveToNext()) {
+            long date = cursor.getLong(0);
+            assertTrue("Error: Day outside the range returned", date >= from && date <= to);
+        }
+        cursor.close();
+    }
+
+    public void testRetentionDropsOldMonths() {
+        insertDays(mStartDate, 3);
+        assertEquals(3, archive(mStartDate + 2 * DAY_IN_MILLIS));
+
+        // A sync years later archives nothing new but ages the old month out.
+        long later = mStartDate + (WeatherHistory.RETENTION_MONTHS + 2) * 31 * DAY_IN_MILLIS;
+        assertEquals(0, archive(later));
+        Cursor cursor = queryHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals("Error: A month past retention was kept", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    private ContentValues[] insertDays(long startDate, int count) {
+        ContentValues[] values = TestUtilities.createForecastValues(mLocationRowId, startDate, count);
+        assertEquals(count, mContext.getContentResolver().bulkInsert(
+                WeatherEntry.CONTENT_URI, values));
+        return values;
+    }
+
+    private int archive(long cutoffDate) {
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherProvider.METHOD_ARCHIVE_WEATHER, Long.toString(cutoffDate), null);
+        assertNotNull(result);
+        return result.getInt(WeatherProvider.KEY_ARCHIVED_ROWS);
+    }
+
+    private Cursor queryHistory(long startDate, long endDate) {
+        Cursor cursor = mContext.getContentResolver().query(
+                HistoryEntry.buildHistoryLocation(TestUtilities.TEST_LOCATION, startDate, endDate),
+                null, null, null, null);
+        assertNotNull(cursor);
+        return cursor;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.DayNormalizer;
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class TestForecastPush extends AndroidTestCase {
+
+    private static final String LOCATION = "push-test";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    private static JSONObject day(int day, int weatherId, String description) throws JSONException {
+        return new JSONObject()
+                .put(ForecastPush.KEY_DAY, day)
+                .put(ForecastPush.KEY_WEATHER_ID, weatherId)
+                .put(ForecastPush.KEY_DESCRIPTION, description)
+                .put(ForecastPush.KEY_MAX, 21.5)
+                .put(ForecastPush.KEY_MIN, 14.2)
+                .put(ForecastPush.KEY_HUMIDITY, 90)
+                .put(ForecastPush.KEY_PRESSURE, 1002.1)
+                .put(ForecastPush.KEY_WIND_SPEED, 9.3)
+                .put(ForecastPush.KEY_WIND_DIRECTION, 240);
+    }
+
+    private Cursor queryDays() {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(LOCATION,
+                        System.currentTimeMillis()),
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_WEATHER_ID,
+                        WeatherEntry.COLUMN_SHORT_DESC},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    public void testDaysCountFromToday() throws JSONException {
+        long today = DayNormalizer.epochDay(System.currentTimeMillis());
+        JSONArray days = new JSONArray().put(day(0, 800, "Clear")).put(day(2, 500, "Rain"));
+        ContentValues[] values = ForecastPush.toContentValues(7, today, days);
+        assertEquals(2, values.length);
+        assertEquals(DayNormalizer.startOfDay(today),
+                (long) values[0].getAsLong(WeatherEntry.COLUMN_DATE));
+        assertEquals(DayNormalizer.startOfDay(today + 2),
+                (long) values[1].getAsLong(WeatherEntry.COLUMN_DATE));
+        assertEquals(7, (long) values[1].getAsLong(WeatherEntry.COLUMN_LOC_KEY));
+        assertEquals(500, (int) values[1].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+    }
+
+    public void testPushedDaysReplaceStoredOnes() throws JSONException {
+        TestUtilities.insertLocation(mContext, LOCATION);
+        ForecastPush push = new ForecastPush(mContext);
+        assertTrue(push.apply(LOCATION, new JSONArray()
+                .put(day(0, 800, "Clear")).put(day(1, 800, "Clear"))));
+        assertTrue(push.apply(LOCATION, new JSONArray().put(day(1, 211, "Storm"))));
+
+        Cursor cursor = queryDays();
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToPosition(1);
+            assertEquals(211, cursor.getInt(1));
+            assertEquals("Storm", cursor.getString(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testBadDayChangesNothing() throws JSONException {
+        TestUtilities.insertLocation(mContext, LOCATION);
+        JSONArray days = new JSONArray().put(day(0, 800, "Clear"));
+        days.put(new JSONObject().put(ForecastPush.KEY_DAY, 1));
+        try {
+            new ForecastPush(mContext).apply(LOCATION, days);
+            fail("A day without its weather should be rejected");
+        } catch (JSONException expected) {
+            // expected
+        }
+
+        Cursor cursor = queryDays();
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testUnsyncedLocationIsNotApplied() throws JSONException {
+        assertFalse(new ForecastPush(mContext).apply(LOCATION,
+                new JSONArray().put(day(0, 800, "Clear"))));
+    }
+
+    public void testOtherLocationsAreIgnored() throws JSONException {
+        // Not the preferred location, and never synced, so there is nothing to do
+        JSONObject message = new JSONObject().put(ForecastPush.KEY_LOCATION, LOCATION);
+        assertEquals(ForecastPush.IGNORED, new ForecastPush(mContext).handle(message));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+
+public class TestWeatherAlertNotifier extends AndroidTestCase {
+
+    private WeatherAlertNotifier mNotifier;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mNotifier = new WeatherAlertNotifier(getContext());
+        // Start without whatever an earlier test or a real push left saved.
+        mNotifier.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ((NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE))
+                .cancel(MyGcmListenerService.NOTIFICATION_ID);
+        mNotifier.clear();
+        super.tearDown();
+    }
+
+    public void testNewestAlertComesFirst() {
+        mNotifier.record("Storm in Mountain View", 1000);
+        mNotifier.record("Flood in Palo Alto", 2000);
+        assertEquals(Arrays.asList("Flood in Palo Alto", "Storm in Mountain View"),
+                mNotifier.getAlerts(3000));
+    }
+
+    public void testRepeatedAlertIsShownOnce() {
+        mNotifier.record("Storm in Mountain View", 1000);
+        mNotifier.record("Flood in Palo Alto", 2000);
+        mNotifier.record("Storm in Mountain View", 3000);
+        assertEquals(Arrays.asList("Storm in Mountain View", "Flood in Palo Alto"),
+                mNotifier.getAlerts(4000));
+    }
+
+    public void testOldAlertsExpire() {
+        mNotifier.record("Storm in Mountain View", 1000);
+        mNotifier.record("Flood in Palo Alto", 2000);
+        assertEquals(Arrays.asList("Flood in Palo Alto"),
+                mNotifier.getAlerts(1000 + WeatherAlertNotifier.ALERT_LIFETIME_MILLIS));
+    }
+
+    public void testAlertsOutliveTheProcess() {
+        mNotifier.record("Storm in Mountain View", 1000);
+        mNotifier.record("Flood in Palo Alto", 2000);
+
+        // A new notifier is what the next push finds after the process was killed.
+        WeatherAlertNotifier restarted = new WeatherAlertNotifier(getContext());
+        assertEquals(Arrays.asList("Flood in Palo Alto", "Storm in Mountain View"),
+                restarted.getAlerts(3000));
+        assertEquals("Error: An alert past its lifetime was restored",
+                Arrays.asList("Flood in Palo Alto"),
+                restarted.getAlerts(1000 + WeatherAlertNotifier.ALERT_LIFETIME_MILLIS));
+    }
+
+    public void testDismissedAlertsStayForgottenAfterARestart() {
+        mNotifier.record("Storm in Mountain View", 1000);
+        mNotifier.clear();
+        assertTrue(new WeatherAlertNotifier(getContext()).getAlerts(2000).isEmpty());
+    }
+
+    public void testAlertsAreCapped() {
+        for (int i = 0; i < WeatherAlertNotifier.MAX_ALERTS + 5; i++) {
+            mNotifier.record("Alert " + i, i);
+        }
+        assertEquals(WeatherAlertNotifier.MAX_ALERTS, mNotifier.getAlerts(100).size());
+        assertEquals("Alert " + (WeatherAlertNotifier.MAX_ALERTS + 4),
+                mNotifier.getAlerts(100).get(0));
+    }
+
+    public void testEveryAlertIsPostedAtOnce() {
+        for (int i = 0; i < 3; i++) {
+            mNotifier.add("Alert " + i);
+            // Nothing is left waiting for later
+            assertEquals(i + 1, mNotifier.getPostCount());
+        }
+        assertEquals(3, mNotifier.getAlerts(System.currentTimeMillis()).size());
+    }
+
+    public void testDismissedAlertsDontComeBack() {
+        mNotifier.add("Storm in Mountain View");
+        mNotifier.clear();
+        mNotifier.add("Flood in Palo Alto");
+        assertEquals(Arrays.asList("Flood in Palo Alto"),
+                mNotifier.getAlerts(System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.utils.StubHttpServer;
+import com.google.android.apps.muzei.api.Artwork;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+    Serves generated images from a local HTTP stub, so the cache's downloads, scaling and
+    content URIs are tested without the network.
+ */
+public class TestMuzeiArtCache extends AndroidTestCase {
+
+    private static final int TARGET_SIZE = 200;
+
+    private StubHttpServer mServer;
+    private MuzeiArtCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StubHttpServer();
+        mCache = new MuzeiArtCache(mContext, TARGET_SIZE);
+        mCache.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCache.clear();
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testDownloadsOnceAndScalesDown() throws Exception {
+        mServer.setResponse("/storm.jpg", jpeg(1000, 600), "image/jpeg");
+        String url = mServer.getUrl("/storm.jpg");
+
+        Uri uri = mCache.get(url);
+        assertEquals(mContext.getString(R.string.muzei_artwork_authority), uri.getAuthority());
+        BitmapFactory.Options bounds = bounds(uri);
+        assertEquals("Error: The shorter side wasn't scaled to the target",
+                TARGET_SIZE, bounds.outHeight);
+        assertTrue("Error: The aspect ratio changed", Math.abs(bounds.outWidth - 333) <= 1);
+        assertEquals(1, mServer.getRequestCount());
+
+        // The second time is served from disk.
+        assertEquals(uri, mCache.get(url));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    public void testSmallImagesAreNotScaledUp() throws Exception {
+        mServer.setResponse("/fog.jpg", jpeg(150, 100), "image/jpeg");
+        BitmapFactory.Options bounds = bounds(mCache.get(mServer.getUrl("/fog.jpg")));
+        assertEquals(150, bounds.outWidth);
+        assertEquals(100, bounds.outHeight);
+    }
+
+    public void testRedirectsAreFollowed() throws Exception {
+        mServer.setResponse("/snow.jpg", jpeg(400, 300), "image/jpeg");
+        mServer.setRedirect("/moved/snow.jpg", "/snow.jpg");
+        mServer.setRedirect("/old/snow.jpg", mServer.getUrl("/moved/snow.jpg"));
+
+        BitmapFactory.Options bounds = bounds(mCache.get(mServer.getUrl("/old/snow.jpg")));
+        assertEquals(TARGET_SIZE, bounds.outHeight);
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    public void testRedirectLoopFails() throws Exception {
+        mServer.setRedirect("/loop.jpg", "/loop.jpg");
+        String url = mServer.getUrl("/loop.jpg");
+        try {
+            mCache.get(url);
+            fail("Error: A redirect loop was followed forever");
+        } catch (IOException expected) {
+        }
+        assertFalse(mCache.contains(url));
+    }
+
+    public void testFailedDownloadIsNotCached() throws Exception {
+        String url = mServer.getUrl("/rain.jpg");
+        try {
+            mCache.get(url);
+            fail("Error: A missing image was cached");
+        } catch (IOException expected) {
+        }
+        assertFalse(mCache.contains(url));
+
+        mServer.setResponse("/rain.jpg", jpeg(400, 300), "image/jpeg");
+        assertNotNull(mCache.get(url));
+        assertTrue(mCache.contains(url));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    public void testNonImageIsRejected() throws Exception {
+        mServer.setResponse("/clear.jpg", "<html></html>".getBytes("UTF-8"), "text/html");
+        String url = mServer.getUrl("/clear.jpg");
+        try {
+            mCache.get(url);
+            fail("Error: A page was cached as an image");
+        } catch (IOException expected) {
+        }
+        assertFalse(mCache.contains(url));
+    }
+
+    public void testCurrentArtworkIsRecognized() {
+        String url = "http://example.com/clouds.jpg";
+        Artwork cached = new Artwork.Builder()
+                .imageUri(Uri.parse("content://example/clouds.jpg"))
+                .title("Clouds")
+                .byline("94043")
+                .token(url)
+                .build();
+        assertTrue(WeatherMuzeiSource.isCurrentArtwork(cached, url, "94043", "Clouds"));
+        assertFalse("Error: Another group's image was taken as current",
+                WeatherMuzeiSource.isCurrentArtwork(cached, "http://example.com/rain.jpg",
+                        "94043", "Clouds"));
+        assertFalse("Error: Another location's artwork was taken as current",
+                WeatherMuzeiSource.isCurrentArtwork(cached, url, "10001", "Clouds"));
+        // Conditions in one group share an image but not a description.
+        assertFalse("Error: Artwork with another description was taken as current",
+                WeatherMuzeiSource.isCurrentArtwork(cached, url, "94043", "Overcast"));
+        assertFalse(WeatherMuzeiSource.isCurrentArtwork(null, url, "94043", "Clouds"));
+
+        // Artwork published without the cache has no token, so it's never the cached copy.
+        Artwork remote = new Artwork.Builder()
+                .imageUri(Uri.parse(url))
+                .title("Clouds")
+                .byline("94043")
+                .build();
+        assertFalse(WeatherMuzeiSource.isCurrentArtwork(remote, url, "94043", "Clouds"));
+    }
+
+    public void testCurrentFallbackIsRecognized() {
+        Uri original = Uri.parse("http://example.com/clouds.jpg");
+        Artwork remote = new Artwork.Builder()
+                .imageUri(original)
+                .title("Clouds")
+                .byline("94043")
+                .build();
+        assertTrue("Error: The same original would be published again",
+                WeatherMuzeiSource.isCurrentFallback(remote, original, "94043", "Clouds"));
+        assertFalse(WeatherMuzeiSource.isCurrentFallback(remote,
+                Uri.parse("http://example.com/rain.jpg"), "94043", "Clouds"));
+        assertFalse(WeatherMuzeiSource.isCurrentFallback(remote, original, "10001", "Clouds"));
+        assertFalse(WeatherMuzeiSource.isCurrentFallback(remote, original, "94043", "Overcast"));
+        assertFalse(WeatherMuzeiSource.isCurrentFallback(null, original, "94043", "Clouds"));
+
+        // Once the cache works again, its copy replaces the original.
+        Artwork cached = new Artwork.Builder()
+                .imageUri(original)
+                .title("Clouds")
+                .byline("94043")
+                .token(original.toString())
+                .build();
+        assertFalse(WeatherMuzeiSource.isCurrentFallback(cached, original, "94043", "Clouds"));
+    }
+
+    private static byte[] jpeg(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(0xff3366cc);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    private BitmapFactory.Options bounds(Uri uri) throws IOException {
+        InputStream in = mContext.getContentResolver().openInputStream(uri);
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(in, null, options);
+            return options;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLocationValidator extends AndroidTestCase {
+
+    private String mSavedLocation;
+
+    // Answers with a fixed status, counting how often it is asked.
+    private static class FakeLookup implements LocationValidator.Lookup {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile int status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+        volatile CountDownLatch release;
+
+        @Override
+        public int lookup(String location) {
+            calls.incrementAndGet();
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return status;
+        }
+    }
+
+    // Counts the syncs a validator asks for instead of starting them.
+    private static class FakeSyncRequester implements LocationValidator.SyncRequester {
+        final AtomicInteger syncs = new AtomicInteger();
+
+        @Override
+        public void requestSync(Context context) {
+            syncs.incrementAndGet();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSavedLocation = prefs().getString(getContext().getString(R.string.pref_location_key),
+                null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor = prefs().edit();
+        if (mSavedLocation != null) {
+            editor.putString(getContext().getString(R.string.pref_location_key), mSavedLocation);
+        } else {
+            editor.remove(getContext().getString(R.string.pref_location_key));
+        }
+        editor.putInt(getContext().getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        editor.commit();
+        super.tearDown();
+    }
+
+    private SharedPreferences prefs() {
+        return PreferenceManager.getDefaultSharedPreferences(getContext());
+    }
+
+    // What saving a new location in the settings does to the preferences.
+    private void saveLocation(String location) {
+        prefs().edit()
+                .putString(getContext().getString(R.string.pref_location_key), location)
+                .putInt(getContext().getString(R.string.pref_location_status_key),
+                        SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN)
+                .commit();
+    }
+
+    public void testAnswersAreRemembered() {
+        FakeLookup lookup = new FakeLookup();
+        LocationValidator validator = new LocationValidator(lookup, 4);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, validator.validate("94043"));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, validator.validate(" 94043 "));
+        assertEquals(1, lookup.calls.get());
+
+        lookup.status = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, validator.validate("Nowhere"));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID,
+                validator.getKnownStatus("nowhere"));
+        assertEquals(2, lookup.calls.get());
+    }
+
+    public void testServerErrorsAreNotRemembered() {
+        FakeLookup lookup = new FakeLookup();
+        lookup.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        LocationValidator validator = new LocationValidator(lookup, 4);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, validator.validate("94043"));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN,
+                validator.getKnownStatus("94043"));
+
+        lookup.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, validator.validate("94043"));
+        assertEquals(2, lookup.calls.get());
+    }
+
+    public void testSyncResultsAreRemembered() {
+        FakeLookup lookup = new FakeLookup();
+        LocationValidator validator = new LocationValidator(lookup, 4);
+        validator.record("Nowhere", SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, validator.validate("Nowhere"));
+        assertEquals(0, lookup.calls.get());
+    }
+
+    public void testOldestAnswerIsDropped() {
+        FakeLookup lookup = new FakeLookup();
+        LocationValidator validator = new LocationValidator(lookup, 2);
+        validator.validate("a");
+        validator.validate("b");
+        validator.validate("c");
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN, validator.getKnownStatus("a"));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, validator.getKnownStatus("c"));
+    }
+
+    public void testOverlappingLookupsShareOneRequest() throws InterruptedException {
+        final FakeLookup lookup = new FakeLookup();
+        lookup.release = new CountDownLatch(1);
+        final LocationValidator validator = new LocationValidator(lookup, 4);
+        final int callers = 5;
+        final AtomicInteger ok = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(callers);
+        for (int i = 0; i < callers; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (validator.validate("94043") == SunshineSyncAdapter.LOCATION_STATUS_OK) {
+                        ok.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        // Let every caller reach the validator before the lookup answers
+        Thread.sleep(200);
+        lookup.release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(callers, ok.get());
+        assertEquals(1, lookup.calls.get());
+        assertEquals(1, validator.getLookupCount());
+    }
+
+    public void testFixingAnInvalidLocationSyncsTheNewOne() {
+        FakeLookup lookup = new FakeLookup();
+        final FakeSyncRequester syncRequester = new FakeSyncRequester();
+        LocationValidator validator = new LocationValidator(lookup, syncRequester, 4);
+        validator.record("Nowhre", SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+
+        saveLocation("Nowhere");
+        validator.validateThenSync(getContext(), "Nowhere");
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return syncRequester.syncs.get() == 1;
+            }
+        }.run();
+        assertEquals(1, lookup.calls.get());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN,
+                Utility.getLocationStatus(getContext()));
+    }
+
+    public void testInvalidCheckOfAnOldLocationLeavesTheNewOneAlone() {
+        FakeLookup lookup = new FakeLookup();
+        final FakeSyncRequester syncRequester = new FakeSyncRequester();
+        LocationValidator validator = new LocationValidator(lookup, syncRequester, 4);
+        validator.record("Nowhre", SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+
+        saveLocation("Nowhere");
+        validator.validateThenSync(getContext(), "Nowhre");
+        // Checks run in order, so once this one has synced the stale one is done
+        validator.validateThenSync(getContext(), "Nowhere");
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return syncRequester.syncs.get() == 1;
+            }
+        }.run();
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN,
+                Utility.getLocationStatus(getContext()));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+
+public class TestNotificationIconCache extends AndroidTestCase {
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "notification_icons");
+        deleteIcons();
+        NotificationIconCache.evictMemory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteIcons();
+        super.tearDown();
+    }
+
+    private void deleteIcons() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    public void testBundledArtIsScaledToTheLargeIcon() {
+        Bitmap icon = new NotificationIconCache(getContext()).getBundled(R.drawable.art_rain);
+        assertNotNull(icon);
+
+        int width = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? getContext().getResources().getDimensionPixelSize(
+                        android.R.dimen.notification_large_icon_width)
+                : getContext().getResources().getDimensionPixelSize(
+                        R.dimen.notification_large_icon_default);
+        assertTrue("Icon is " + icon.getWidth() + " wide, the notification shows " + width,
+                icon.getWidth() <= width);
+    }
+
+    public void testBundledArtIsKeptOnDisk() {
+        NotificationIconCache cache = new NotificationIconCache(getContext());
+        Bitmap icon = cache.getBundled(R.drawable.art_clear);
+        assertNotNull(icon);
+
+        File[] files = mDirectory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().startsWith("art_clear_"));
+
+        // Later notifications are served from memory
+        assertSame(icon, cache.getBundled(R.drawable.art_clear));
+
+        // And once the process is gone, from the file
+        NotificationIconCache.evictMemory();
+        Bitmap stored = cache.getBundled(R.drawable.art_clear);
+        assertNotNull(stored);
+        assertEquals(icon.getWidth(), stored.getWidth());
+        assertEquals(icon.getHeight(), stored.getHeight());
+    }
+}
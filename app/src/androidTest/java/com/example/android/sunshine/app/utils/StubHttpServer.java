@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal HTTP server on the loopback interface, so code that downloads can be tested without
+ * the network.  Each path serves the body it was given with a 200, or redirects where it was
+ * told to, anything else is a 404, and every request is counted.
+ */
+public class StubHttpServer {
+
+    private static class Response {
+        final byte[] body;
+        final String contentType;
+        // Where to send the client instead, or null to serve the body.
+        final String location;
+
+        Response(byte[] body, String contentType, String location) {
+            this.body = body;
+            this.contentType = contentType;
+            this.location = location;
+        }
+    }
+
+    private final ServerSocket mServerSocket;
+    private final Map<String, Response> mResponses = new ConcurrentHashMap<String, Response>();
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final Thread mThread;
+
+    public StubHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        serve(mServerSocket.accept());
+                    } catch (IOException e) {
+                        // Closed by shutdown, or a client gave up; either way, carry on.
+                    }
+                }
+            }
+        }, "StubHttpServer");
+        mThread.start();
+    }
+
+    public void setResponse(String path, byte[] body, String contentType) {
+        mResponses.put(path, new Response(body, contentType, null));
+    }
+
+    /**
+     * Answers requests for path with a 301 to location.
+     */
+    public void setRedirect(String path, String location) {
+        mResponses.put(path, new Response(null, null, location));
+    }
+
+    public void removeResponse(String path) {
+        mResponses.remove(path);
+    }
+
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    public int getRequestCount() {
+        return mRequests.get();
+    }
+
+    public void shutdown() throws IOException, InterruptedException {
+        mServerSocket.close();
+        mThread.join();
+    }
+
+    private void serve(Socket socket) throws IOException {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            String header = reader.readLine();
+            while (header != null && !header.isEmpty()) {
+                // Headers are ignored.
+                header = reader.readLine();
+            }
+            mRequests.incrementAndGet();
+
+            String[] parts = requestLine.split(" ");
+            Response response = parts.length > 1 ? mResponses.get(parts[1]) : null;
+            OutputStream out = socket.getOutputStream();
+            if (response == null) {
+                out.write(("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n"
+                        + "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+            } else if (response.location != null) {
+                out.write(("HTTP/1.1 301 Moved Permanently\r\nLocation: " + response.location
+                        + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                        .getBytes("US-ASCII"));
+            } else {
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: " + response.contentType
+                        + "\r\nContent-Length: " + response.body.length
+                        + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+                out.write(response.body);
+            }
+            out.flush();
+        } finally {
+            socket.close();
+        }
+    }
+}
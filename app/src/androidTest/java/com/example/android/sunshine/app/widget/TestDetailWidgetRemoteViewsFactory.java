@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.SharedPreferences;
+import android.graphics.BitmapFactory;
+import android.os.Parcel;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.PreferencesSnapshot;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArt;
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Refreshes the detail widget's rows with an art pack made of the bundled art, so nothing
+    here needs the network, and checks what the rows would send to the launcher.
+ */
+public class TestDetailWidgetRemoteViewsFactory extends AndroidTestCase {
+    private static final String LOG_TAG = TestDetailWidgetRemoteViewsFactory.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    // Room for a row's text, fill-in intent and the rest of its RemoteViews.
+    private static final int ROW_OVERHEAD_BYTES = 8 * 1024;
+
+    private SharedPreferences mPrefs;
+    private String mArtPackKey;
+    private String mSavedArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mArtPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mSavedArtPack = mPrefs.getString(mArtPackKey, null);
+        setArtPack("android.resource://" + mContext.getPackageName() + "/drawable/art_%s");
+        TestUtilities.deleteAllRecords(mContext);
+        long locationId = TestUtilities.insertLocation(mContext,
+                Utility.getPreferredLocation(mContext));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createForecastValues(locationId,
+                        WeatherContract.normalizeDate(System.currentTimeMillis()), DAYS));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        if (mSavedArtPack == null) {
+            mPrefs.edit().remove(mArtPackKey).commit();
+        } else {
+            mPrefs.edit().putString(mArtPackKey, mSavedArtPack).commit();
+        }
+        super.tearDown();
+    }
+
+    public void testRowsSendArtAtIconSize() {
+        DetailWidgetRemoteViewsFactory factory = new DetailWidgetRemoteViewsFactory(mContext);
+        factory.onCreate();
+        factory.onDataSetChanged();
+        assertTrue("Error: The widget has no rows", factory.getCount() > 0);
+
+        // What the art would have cost at the size it's bundled at.
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_clear, bounds);
+        int originalBytes = bounds.outWidth * bounds.outHeight * 4;
+        int iconSize = WeatherArt.getListIconSize(mContext);
+        int rowLimit = iconSize * iconSize * 4 + ROW_OVERHEAD_BYTES;
+
+        // Rows only look their art up, so no art is requested while they're built.
+        int requests = WeatherArt.getHitCount() + WeatherArt.getMissCount();
+        long refreshBytes = 0;
+        for (int i = 0; i < factory.getCount(); i++) {
+            int rowBytes = parcelledSize(factory.getViewAt(i));
+            assertTrue("Error: Row " + i + " sends " + rowBytes + " bytes", rowBytes <= rowLimit);
+            refreshBytes += rowBytes;
+        }
+        assertEquals(requests, WeatherArt.getHitCount() + WeatherArt.getMissCount());
+        Log.i(LOG_TAG, String.format("%d rows sent %d bytes; art at its bundled size is %d "
+                + "bytes a row", factory.getCount(), refreshBytes, originalBytes));
+        assertTrue(refreshBytes < (long) factory.getCount() * originalBytes);
+
+        factory.onDestroy();
+    }
+
+    public void testRowsOutliveTheirData() {
+        DetailWidgetRemoteViewsFactory factory = new DetailWidgetRemoteViewsFactory(mContext);
+        factory.onCreate();
+        factory.onDataSetChanged();
+        int count = factory.getCount();
+        assertTrue("Error: The widget has no rows", count > 0);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = factory.getItemId(i);
+            // Rows are keyed by date, whichever source they came from.
+            assertTrue("Error: Row ids don't follow the dates", i == 0 || ids[i] > ids[i - 1]);
+        }
+
+        // The refresh kept its own copy, so rows don't need the provider until the next one.
+        TestUtilities.deleteAllRecords(mContext);
+        assertEquals(count, factory.getCount());
+        for (int i = 0; i < count; i++) {
+            assertNotNull("Error: Row " + i + " is gone", factory.getViewAt(i));
+            assertEquals(ids[i], factory.getItemId(i));
+        }
+        assertNull(factory.getViewAt(count));
+
+        factory.onDestroy();
+        assertEquals(0, factory.getCount());
+    }
+
+    private static int parcelledSize(RemoteViews views) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            views.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void setArtPack(final String artPack) {
+        mPrefs.edit().putString(mArtPackKey, artPack).commit();
+        // The snapshot is rebuilt on the main thread, a little after the commit.
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return artPack.equals(PreferencesSnapshot.get(mContext).artPack);
+            }
+        }.run();
+    }
+}
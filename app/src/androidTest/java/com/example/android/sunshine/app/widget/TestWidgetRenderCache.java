@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+
+public class TestWidgetRenderCache extends AndroidTestCase {
+
+    private static final String CLEAR = "clear|Clear|20°|10°";
+    private static final String RAIN = "rain|Rain|18°|9°";
+
+    public void testNewWidgetIsPushedInFull() {
+        WidgetRenderCache cache = new WidgetRenderCache();
+        assertEquals(0, cache.getLayout(1));
+        assertEquals(WidgetRenderCache.FULL, cache.update(1, R.layout.widget_today, CLEAR));
+        assertEquals(R.layout.widget_today, cache.getLayout(1));
+    }
+
+    public void testUnchangedWidgetIsSkipped() {
+        WidgetRenderCache cache = new WidgetRenderCache();
+        cache.update(1, R.layout.widget_today, CLEAR);
+        assertEquals(WidgetRenderCache.SKIP, cache.update(1, R.layout.widget_today, CLEAR));
+        assertEquals(1, cache.getSkippedCount());
+    }
+
+    public void testNewContentIsPartial() {
+        WidgetRenderCache cache = new WidgetRenderCache();
+        cache.update(1, R.layout.widget_today, CLEAR);
+        assertEquals(WidgetRenderCache.PARTIAL, cache.update(1, R.layout.widget_today, RAIN));
+        // And the new content is what later updates compare against.
+        assertEquals(WidgetRenderCache.SKIP, cache.update(1, R.layout.widget_today, RAIN));
+    }
+
+    public void testNewLayoutIsPushedInFull() {
+        WidgetRenderCache cache = new WidgetRenderCache();
+        cache.update(1, R.layout.widget_today, CLEAR);
+        assertEquals(WidgetRenderCache.FULL,
+                cache.update(1, R.layout.widget_today_large, CLEAR));
+    }
+
+    public void testWidgetsAreTrackedSeparately() {
+        WidgetRenderCache cache = new WidgetRenderCache();
+        cache.update(1, R.layout.widget_today, CLEAR);
+        assertEquals(WidgetRenderCache.FULL, cache.update(2, R.layout.widget_today, CLEAR));
+        assertEquals(WidgetRenderCache.PARTIAL, cache.update(2, R.layout.widget_today, RAIN));
+        assertEquals(WidgetRenderCache.SKIP, cache.update(1, R.layout.widget_today, CLEAR));
+    }
+
+    public void testRemovedWidgetStartsOver() {
+        WidgetRenderCache cache = new WidgetRenderCache();
+        cache.update(1, R.layout.widget_today, CLEAR);
+        cache.update(2, R.layout.widget_today, CLEAR);
+        cache.remove(1);
+        assertEquals(0, cache.getLayout(1));
+        assertEquals(WidgetRenderCache.FULL, cache.update(1, R.layout.widget_today, CLEAR));
+        assertEquals(WidgetRenderCache.SKIP, cache.update(2, R.layout.widget_today, CLEAR));
+
+        assertEquals(3, cache.getFullCount());
+        assertEquals(0, cache.getPartialCount());
+        assertEquals(1, cache.getSkippedCount());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Runs the dispatcher on a clock the test moves by hand, so windows are exact and nothing
+    waits.
+ */
+public class TestWidgetUpdateDispatcher extends AndroidTestCase {
+
+    private static final long QUIET = 2000;
+    private static final long MAX_DELAY = 10000;
+
+    private VirtualScheduler mScheduler;
+    private int mUpdates;
+    private WidgetUpdateDispatcher mDispatcher;
+
+    private static final class VirtualScheduler implements WidgetUpdateDispatcher.Scheduler {
+        long now;
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final List<Long> times = new ArrayList<Long>();
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        @Override
+        public void postAtTime(Runnable task, long uptimeMillis) {
+            tasks.add(task);
+            times.add(uptimeMillis);
+        }
+
+        @Override
+        public void remove(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    times.remove(i);
+                }
+            }
+        }
+
+        // Moves the clock on, running whatever comes due on the way, in order.
+        void advance(long millis) {
+            long until = now + millis;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (times.get(i) <= until && (next < 0 || times.get(i) < times.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) break;
+                now = times.remove(next);
+                tasks.remove(next).run();
+            }
+            now = until;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mScheduler = new VirtualScheduler();
+        mUpdates = 0;
+        mDispatcher = new WidgetUpdateDispatcher(mScheduler, QUIET, MAX_DELAY, new Runnable() {
+            @Override
+            public void run() {
+                mUpdates++;
+            }
+        });
+    }
+
+    public void testFirstRequestIsSentStraightAway() {
+        mDispatcher.requestUpdate();
+        assertEquals("Error: The first update waited on a handler", 1, mUpdates);
+        assertTrue("Error: Something was left to run later", mScheduler.tasks.isEmpty());
+
+        mScheduler.advance(MAX_DELAY * 2);
+        assertEquals(1, mUpdates);
+    }
+
+    public void testBurstIsMergedAfterTheFirstUpdate() {
+        // A manual refresh, a location change and a periodic sync, a second apart.
+        mDispatcher.requestUpdate();
+        mScheduler.advance(1000);
+        mDispatcher.requestUpdate();
+        mScheduler.advance(1000);
+        mDispatcher.requestUpdate();
+        assertEquals(1, mUpdates);
+
+        mScheduler.advance(QUIET - 1);
+        assertEquals(1, mUpdates);
+        mScheduler.advance(1);
+        assertEquals(2, mUpdates);
+        assertEquals(3, mDispatcher.getRequestCount());
+        assertEquals(2, mDispatcher.getDispatchCount());
+
+        // Nothing more goes out without another request.
+        mScheduler.advance(MAX_DELAY * 2);
+        assertEquals(2, mUpdates);
+    }
+
+    public void testRequestsAfterTheWindowAreSentSeparately() {
+        mDispatcher.requestUpdate();
+        mScheduler.advance(QUIET);
+        mDispatcher.requestUpdate();
+        assertEquals(2, mUpdates);
+    }
+
+    public void testRequestJustAfterAHeldUpdateIsHeld() {
+        mDispatcher.requestUpdate();
+        mScheduler.advance(1000);
+        mDispatcher.requestUpdate();
+        mScheduler.advance(QUIET);
+        assertEquals(2, mUpdates);
+
+        // The held update has only just gone out, so this one waits its turn.
+        mDispatcher.requestUpdate();
+        assertEquals(2, mUpdates);
+        mScheduler.advance(QUIET);
+        assertEquals(3, mUpdates);
+    }
+
+    public void testUpdateNowSendsHeldRequestsWithIt() {
+        mDispatcher.requestUpdate();
+        mScheduler.advance(1000);
+        mDispatcher.requestUpdate();
+        assertEquals(1, mUpdates);
+
+        mDispatcher.updateNow();
+        assertEquals(2, mUpdates);
+        assertTrue("Error: The held update was left to run later", mScheduler.tasks.isEmpty());
+        assertEquals(3, mDispatcher.getRequestCount());
+        assertEquals(2, mDispatcher.getDispatchCount());
+    }
+
+    public void testSteadyRequestsAreSentByTheMaxDelay() {
+        // Never quiet for a whole window.  The first goes out at once, the rest are held from
+        // the second on.
+        for (long t = 0; t < MAX_DELAY; t += QUIET / 2) {
+            mDispatcher.requestUpdate();
+            mScheduler.advance(QUIET / 2);
+        }
+        assertEquals(1, mUpdates);
+        mDispatcher.requestUpdate();
+        mScheduler.advance(QUIET / 2);
+        assertEquals(2, mUpdates);
+
+        // The next burst is held from its own first request.
+        mDispatcher.requestUpdate();
+        mScheduler.advance(QUIET);
+        assertEquals(3, mUpdates);
+    }
+}
@@ -30,26 +30,76 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.example.android.sunshine.app.data.DayNormalizer;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.HashSet;
+import java.util.List;
+
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
-    private static final int VIEW_TYPE_TODAY = 0;
-    private static final int VIEW_TYPE_FUTURE_DAY = 1;
+    private static final int VIEW_TYPE_TODAY = ForecastRowModel.VIEW_TYPE_TODAY;
+    private static final int VIEW_TYPE_FUTURE_DAY = ForecastRowModel.VIEW_TYPE_FUTURE_DAY;
+
+    // Start loading the next page, or reopening a closed one, when a row this close to it is
+    // bound.
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+    // Fetch art for this many rows past the one being bound.
+    private static final int ART_PREFETCH_DISTANCE = 5;
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private ForecastDiff.Rows mRows;
+    private ForecastRowModel[] mModels;
+    // The day the bound rows' day labels were made on.
+    private long mLabelDay;
+    // Art already prefetched for this load.  A handful of conditions cover a whole forecast.
+    private final HashSet<String> mPrefetchedArt = new HashSet<String>();
     final private Context mContext;
+    final private RequestManager mGlide;
+    final private int mTodayIconSize;
+    final private int mListIconSize;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
 
+    private final PagedForecastCursor.PageListener mPageListener =
+            new PagedForecastCursor.PageListener() {
+        @Override
+        public void onRowsInserted(int positionStart, int itemCount) {
+            notifyItemRangeInserted(positionStart, itemCount);
+        }
+
+        @Override
+        public void onRowsReloaded(int positionStart, int itemCount) {
+            notifyItemRangeChanged(positionStart, itemCount);
+        }
+    };
+
+    private final ForecastDiff.Callback mUpdateCallback = new ForecastDiff.Callback() {
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(position, count, payload);
+        }
+    };
+
     /**
      * Cache of the children views for a forecast list item.
      */
@@ -73,7 +123,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
+            // Nothing to show for a row still loading.
+            if ( !mCursor.moveToPosition(adapterPosition) ) return;
             int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
             mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
             mICM.onClick(this);
@@ -86,6 +137,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
+        mGlide = Glide.with(context);
+        mTodayIconSize = WeatherArt.getTodayIconSize(context);
+        mListIconSize = WeatherArt.getListIconSize(context);
         mClickHandler = dh;
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
@@ -124,65 +178,196 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastRowModel model = getModel(position);
+        if ( null == model ) {
+            bindPlaceholder(forecastAdapterViewHolder);
+            mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+            loadPagesNear(position);
+            return;
+        }
+
+        bindIcon(forecastAdapterViewHolder, position, model);
+
+        // this enables better animations. even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+
+        bindDate(forecastAdapterViewHolder, position, model);
+        bindDescription(forecastAdapterViewHolder, model);
+
+        // For accessibility, we don't want a content description for the icon field
+        // because the information is repeated in the description view and the icon
+        // is not individually selectable
+
+        bindHigh(forecastAdapterViewHolder, model);
+        bindLow(forecastAdapterViewHolder, model);
+
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+
+        prefetchArt(position);
+        loadPagesNear(position);
+    }
+
+    /*
+        A row that is still there after a reload but shows something new gets the fields that
+        changed as payloads (see ForecastDiff), and only those are bound again.  That leaves its
+        image alone unless the condition changed.  The transition name and the selection are keyed
+        by position, so they are always bound again in case the row moved.
+     */
+    @Override
+    public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                                 List<Object> payloads) {
+        if ( payloads.isEmpty() ) {
+            onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
+        }
+        int changes = 0;
+        for ( Object payload : payloads ) {
+            changes |= (Integer) payload;
+        }
+
+        ForecastRowModel model = getModel(position);
+        if ( null == model ) {
+            onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
+        }
+        if ( (changes & ForecastDiff.CHANGED_CONDITION) != 0 ) {
+            bindIcon(forecastAdapterViewHolder, position, model);
+            bindDescription(forecastAdapterViewHolder, model);
+        }
+        if ( (changes & ForecastDiff.CHANGED_DATE) != 0 ) {
+            bindDate(forecastAdapterViewHolder, position, model);
+        }
+        if ( (changes & ForecastDiff.CHANGED_HIGH) != 0 ) {
+            bindHigh(forecastAdapterViewHolder, model);
+        }
+        if ( (changes & ForecastDiff.CHANGED_LOW) != 0 ) {
+            bindLow(forecastAdapterViewHolder, model);
+        }
+
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+
+        loadPagesNear(position);
+    }
+
+    /*
+        The loader formats the rows it loads on its own thread.  Rows from pages loaded later
+        are formatted here as they are bound, or are null while their page is being queried.
+     */
+    private ForecastRowModel getModel(int position) {
+        if ( null != mModels && position < mModels.length ) {
+            return mModels[position];
+        }
+        if ( !mCursor.moveToPosition(position) ) {
+            return null;
+        }
+        return ForecastRowModel.read(mContext, mCursor, PreferencesSnapshot.get(mContext),
+                ForecastRowModel.getViewType(position, mUseTodayLayout));
+    }
+
+    /*
+        A row whose page is being queried again shows nothing until the page is back and the
+        row is bound again.
+     */
+    private void bindPlaceholder(ForecastAdapterViewHolder forecastAdapterViewHolder) {
+        Glide.clear(forecastAdapterViewHolder.mIconView);
+        forecastAdapterViewHolder.mIconView.setImageDrawable(null);
+        forecastAdapterViewHolder.mDateView.setText(null);
+        forecastAdapterViewHolder.mDescriptionView.setText(null);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(null);
+        forecastAdapterViewHolder.mHighTempView.setText(null);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(null);
+        forecastAdapterViewHolder.mLowTempView.setText(null);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(null);
+    }
+
+    private void bindIcon(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                          ForecastRowModel model) {
         int defaultImage;
-        boolean useLongToday;
+        int size;
 
-        switch (getItemViewType(position)) {
+        switch (model.viewType) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = model.artResource;
+                size = mTodayIconSize;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = model.iconResource;
+                size = mListIconSize;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( null == model.artUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
-                    .crossFade()
-                    .into(forecastAdapterViewHolder.mIconView);
+            WeatherArt.load(mGlide, model.artUrl, size, defaultImage,
+                    forecastAdapterViewHolder.mIconView);
         }
+    }
 
-        // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+    /*
+        Starts decoding art for the rows about to scroll into view, at the size they'll show it,
+        so binding them finds it in memory.  Only rows the loader formatted are looked at; the
+        art for later pages is almost always art these rows already fetched.
+     */
+    private void prefetchArt(int position) {
+        if ( null == mModels ) return;
+        int end = Math.min(position + ART_PREFETCH_DISTANCE, mModels.length - 1);
+        for ( int i = position + 1; i <= end; i++ ) {
+            String artUrl = mModels[i].artUrl;
+            if ( null == artUrl || mModels[i].viewType == VIEW_TYPE_TODAY
+                    || !mPrefetchedArt.add(artUrl) ) {
+                continue;
+            }
+            WeatherArt.prefetch(mGlide, artUrl, mListIconSize);
+        }
+    }
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+    private void bindDate(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                          ForecastRowModel model) {
+        boolean useLongToday = model.viewType == VIEW_TYPE_TODAY;
+        forecastAdapterViewHolder.mDateView.setText(
+                Utility.getFriendlyDayString(mContext, model.date, useLongToday));
+    }
 
-        // For accessibility, we don't want a content description for the icon field
-        // because the information is repeated in the description view and the icon
-        // is not individually selectable
+    private void bindDescription(ForecastAdapterViewHolder forecastAdapterViewHolder,
+                                 ForecastRowModel model) {
+        forecastAdapterViewHolder.mDescriptionView.setText(model.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(model.descriptionA11y);
+    }
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+    private void bindHigh(ForecastAdapterViewHolder forecastAdapterViewHolder,
+                          ForecastRowModel model) {
+        forecastAdapterViewHolder.mHighTempView.setText(model.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(model.highA11y);
+    }
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+    private void bindLow(ForecastAdapterViewHolder forecastAdapterViewHolder,
+                         ForecastRowModel model) {
+        forecastAdapterViewHolder.mLowTempView.setText(model.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(model.lowA11y);
+    }
 
-        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    /*
+        When the cursor is a PagedForecastCursor, start fetching its next page once the user gets
+        near the end of what's loaded, and reopen closed pages the user is getting near.  The
+        queries run on the cursor's thread; the rows are reported through mPageListener, which
+        is called on the main thread between layouts, when the adapter can report them.
+     */
+    private void loadPagesNear(int position) {
+        if ( !(mCursor instanceof PagedForecastCursor) ) return;
+        PagedForecastCursor pagedCursor = (PagedForecastCursor) mCursor;
+        int count = pagedCursor.getCount();
+        if ( pagedCursor.hasMore() && position >= count - PAGE_PREFETCH_DISTANCE ) {
+            pagedCursor.loadNextPage();
+        }
+        int first = Math.max(0, position - PAGE_PREFETCH_DISTANCE);
+        int last = Math.min(count - 1, position + PAGE_PREFETCH_DISTANCE);
+        for ( int i = first; i <= last; i++ ) {
+            if ( !pagedCursor.isResident(i) ) {
+                pagedCursor.reloadPage(i);
+            }
+        }
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -203,7 +388,21 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemViewType(int position) {
-        return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
+        if ( null != mModels && position < mModels.length ) {
+            return mModels[position].viewType;
+        }
+        return ForecastRowModel.getViewType(position, mUseTodayLayout);
+    }
+
+    /**
+     * Binds the day labels again if the day has changed since they were made, so "Today" moves
+     * on at midnight without waiting for the next load.
+     */
+    void refreshDayLabels() {
+        long today = DayNormalizer.epochDay(System.currentTimeMillis());
+        if ( today == mLabelDay ) return;
+        mLabelDay = today;
+        notifyItemRangeChanged(0, getItemCount(), ForecastDiff.CHANGED_DATE);
     }
 
     @Override
@@ -213,8 +412,39 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     public void swapCursor(Cursor newCursor) {
+        swapCursor(newCursor, null);
+    }
+
+    /**
+     * Swaps in a new load, notifying only the rows that changed when the diff was worked out
+     * against what the adapter shows now.
+     *
+     * @param load the loader's result the cursor starts with, or null to format rows as they
+     *             are bound and rebind everything
+     */
+    void swapCursor(Cursor newCursor, ForecastLoader.Result load) {
+        Cursor oldCursor = mCursor;
+        ForecastDiff.Rows oldRows = mRows;
+        ForecastDiff diff = null == load ? null : load.diff;
+        if ( oldCursor instanceof PagedForecastCursor ) {
+            ((PagedForecastCursor) oldCursor).setPageListener(null);
+        }
+        if ( newCursor instanceof PagedForecastCursor ) {
+            ((PagedForecastCursor) newCursor).setPageListener(mPageListener);
+        }
         mCursor = newCursor;
-        notifyDataSetChanged();
+        mRows = null == load ? null : load.rows;
+        mModels = null == load ? null : load.models;
+        mPrefetchedArt.clear();
+        mLabelDay = DayNormalizer.epochDay(System.currentTimeMillis());
+        // The diff only covers the first page, so if more were loaded since, or the diff is
+        // against some other load, start over.
+        if ( null != diff && null != oldCursor && null != oldRows && diff.getOldRows() == oldRows
+                && oldCursor.getCount() == oldRows.size() ) {
+            diff.dispatchTo(mUpdateCallback);
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
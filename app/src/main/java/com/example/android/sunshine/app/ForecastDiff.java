@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.DayNormalizer;
+
+/**
+ * The difference between two loads of the forecast list, as the adapter notifications that turn
+ * one into the other.  Rows are matched by date, which is unique and ascending within a
+ * location, so the two loads are merged in one pass.  A row that is in both loads but shows
+ * something new is reported as changed, with the fields that changed as its payload, so only
+ * those are bound again.
+ */
+final class ForecastDiff {
+
+    // Payload flags.  The day label changes for every row when the day does.
+    static final int CHANGED_DATE = 1;
+    // The icon and the description.
+    static final int CHANGED_CONDITION = 2;
+    static final int CHANGED_HIGH = 4;
+    static final int CHANGED_LOW = 8;
+
+    interface Callback {
+        void onInserted(int position, int count);
+
+        void onRemoved(int position, int count);
+
+        /**
+         * @param payload the CHANGED_ flags as an Integer, or null when the row has to be bound
+         *                from scratch
+         */
+        void onChanged(int position, int count, Object payload);
+    }
+
+    /**
+     * What one load of the list shows: the fields of each row a bind reads, and the
+     * preferences they were shown with.
+     */
+    static final class Rows {
+        final String locationSetting;
+        // The epoch day the load was made on, which the day labels count from.
+        final long today;
+        final boolean metric;
+        final String artPack;
+        final long[] dates;
+        final int[] conditionIds;
+        final double[] highs;
+        final double[] lows;
+
+        Rows(String locationSetting, long today, boolean metric, String artPack, long[] dates,
+             int[] conditionIds, double[] highs, double[] lows) {
+            this.locationSetting = locationSetting;
+            this.today = today;
+            this.metric = metric;
+            this.artPack = artPack;
+            this.dates = dates;
+            this.conditionIds = conditionIds;
+            this.highs = highs;
+            this.lows = lows;
+        }
+
+        /**
+         * Reads a cursor with ForecastFragment's columns, leaving it before its first row.
+         */
+        static Rows read(Cursor cursor, String locationSetting, PreferencesSnapshot prefs,
+                         long now) {
+            int count = cursor.getCount();
+            long[] dates = new long[count];
+            int[] conditionIds = new int[count];
+            double[] highs = new double[count];
+            double[] lows = new double[count];
+            for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+                dates[i] = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+                conditionIds[i] = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+                highs[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+                lows[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+            }
+            cursor.moveToPosition(-1);
+            return new Rows(locationSetting, DayNormalizer.epochDay(now), prefs.metric,
+                    prefs.artPack, dates, conditionIds, highs, lows);
+        }
+
+        int size() {
+            return dates.length;
+        }
+    }
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_CHANGE = 2;
+    // Flags for a change that needs a full bind.
+    private static final int REBIND = 0;
+
+    private final Rows mOldRows;
+    private final Rows mNewRows;
+    // The operations in dispatch order.  Each position is in the list as it stands after the
+    // operations before it, the order RecyclerView applies them in.
+    private final int[] mTypes;
+    private final int[] mPositions;
+    private final int[] mCounts;
+    private final int[] mFlags;
+    private int mOpCount;
+
+    private ForecastDiff(Rows oldRows, Rows newRows) {
+        mOldRows = oldRows;
+        mNewRows = newRows;
+        int capacity = oldRows.size() + newRows.size();
+        mTypes = new int[capacity];
+        mPositions = new int[capacity];
+        mCounts = new int[capacity];
+        mFlags = new int[capacity];
+    }
+
+    /**
+     * @return the difference, or null if the loads are for different locations and have no
+     * rows in common.
+     */
+    static ForecastDiff compute(Rows oldRows, Rows newRows) {
+        if (!oldRows.locationSetting.equals(newRows.locationSetting)) return null;
+
+        // Changes every row shows, even where the data is the same.
+        int everyRow = 0;
+        if (oldRows.today != newRows.today) everyRow |= CHANGED_DATE;
+        if (oldRows.metric != newRows.metric) everyRow |= CHANGED_HIGH | CHANGED_LOW;
+        if (!oldRows.artPack.equals(newRows.artPack)) everyRow |= CHANGED_CONDITION;
+
+        ForecastDiff diff = new ForecastDiff(oldRows, newRows);
+        int oldSize = oldRows.size();
+        int newSize = newRows.size();
+        int i = 0;
+        int j = 0;
+        int position = 0;
+        while (i < oldSize || j < newSize) {
+            if (j == newSize || (i < oldSize && oldRows.dates[i] < newRows.dates[j])) {
+                diff.add(OP_REMOVE, position, 0);
+                i++;
+            } else if (i == oldSize || newRows.dates[j] < oldRows.dates[i]) {
+                diff.add(OP_INSERT, position, 0);
+                position++;
+                j++;
+            } else {
+                if ((i == 0) != (j == 0)) {
+                    // The first row can have a layout of its own, so a row moving to or from
+                    // it is bound from scratch.
+                    diff.add(OP_CHANGE, position, REBIND);
+                } else {
+                    int changes = everyRow;
+                    if (oldRows.conditionIds[i] != newRows.conditionIds[j]) {
+                        changes |= CHANGED_CONDITION;
+                    }
+                    if (Double.compare(oldRows.highs[i], newRows.highs[j]) != 0) {
+                        changes |= CHANGED_HIGH;
+                    }
+                    if (Double.compare(oldRows.lows[i], newRows.lows[j]) != 0) {
+                        changes |= CHANGED_LOW;
+                    }
+                    if (changes != 0) {
+                        diff.add(OP_CHANGE, position, changes);
+                    }
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    // Adds an operation on one row, merging it into the last one when they make a range.
+    private void add(int type, int position, int flags) {
+        if (mOpCount > 0) {
+            int last = mOpCount - 1;
+            if (mTypes[last] == type && mFlags[last] == flags) {
+                int lastEnd = type == OP_REMOVE
+                        ? mPositions[last] : mPositions[last] + mCounts[last];
+                if (lastEnd == position) {
+                    mCounts[last]++;
+                    return;
+                }
+            }
+        }
+        mTypes[mOpCount] = type;
+        mPositions[mOpCount] = position;
+        mCounts[mOpCount] = 1;
+        mFlags[mOpCount] = flags;
+        mOpCount++;
+    }
+
+    Rows getOldRows() {
+        return mOldRows;
+    }
+
+    Rows getNewRows() {
+        return mNewRows;
+    }
+
+    void dispatchTo(Callback callback) {
+        for (int op = 0; op < mOpCount; op++) {
+            switch (mTypes[op]) {
+                case OP_INSERT:
+                    callback.onInserted(mPositions[op], mCounts[op]);
+                    break;
+                case OP_REMOVE:
+                    callback.onRemoved(mPositions[op], mCounts[op]);
+                    break;
+                default:
+                    callback.onChanged(mPositions[op], mCounts[op],
+                            mFlags[op] == REBIND ? null : Integer.valueOf(mFlags[op]));
+            }
+        }
+    }
+}
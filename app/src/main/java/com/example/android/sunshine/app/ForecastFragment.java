@@ -17,7 +17,10 @@ package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.database.Cursor;
@@ -45,6 +48,7 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.DayNormalizer;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
@@ -60,6 +64,21 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
 
+    // The rows only keep their dates, so moving to a new day just means binding the labels again.
+    private final BroadcastReceiver mDayChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                // TimeZoneChangedReceiver does this too, but may not have run yet.
+                DayNormalizer.onTimeZoneChanged();
+                WeatherFormatter.getInstance().onTimeZoneChanged();
+            }
+            if (null != mForecastAdapter) {
+                mForecastAdapter.refreshDayLabels();
+            }
+        }
+    };
+
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
@@ -121,6 +140,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.registerOnSharedPreferenceChangeListener(this);
+        IntentFilter dayChanged = new IntentFilter(Intent.ACTION_DATE_CHANGED);
+        dayChanged.addAction(Intent.ACTION_TIME_CHANGED);
+        dayChanged.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        getActivity().registerReceiver(mDayChangedReceiver, dayChanged);
+        // The day may have changed while paused.
+        mForecastAdapter.refreshDayLabels();
         super.onResume();
     }
 
@@ -128,6 +153,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.unregisterOnSharedPreferenceChangeListener(this);
+        getActivity().unregisterReceiver(mDayChangedReceiver);
         super.onPause();
     }
 
@@ -312,21 +338,26 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // Sort order:  Ascending, by date.
         String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
+        // Only the first page; the adapter asks the PagedForecastCursor for more as the user
+        // scrolls.
         String locationSetting = Utility.getPreferredLocation(getActivity());
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
+                locationSetting, System.currentTimeMillis(), PagedForecastCursor.PAGE_SIZE);
 
-        return new CursorLoader(getActivity(),
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+                sortOrder,
+                mUseTodayLayout);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(
+                ((CursorLoader) loader).getUri());
+        swapForecastCursor(new PagedForecastCursor(getActivity().getContentResolver(),
+                locationSetting, FORECAST_COLUMNS, COL_WEATHER_DATE, data),
+                (ForecastLoader.Result) data);
         updateEmptyView();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
@@ -345,8 +376,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                             int count = data.getCount();
                             int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
                             for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
+                                // Rows on pages still loading can't be the one; skip them.
+                                if ( data.moveToPosition(i)
+                                        && data.getLong(dateColumn) == mInitialSelectedDate ) {
                                     position = i;
                                     break;
                                 }
@@ -384,14 +416,29 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+        swapForecastCursor(null, null);
+    }
+
+    private void swapForecastCursor(Cursor cursor, ForecastLoader.Result load) {
+        Cursor oldCursor = mForecastAdapter.getCursor();
+        mForecastAdapter.swapCursor(cursor, load);
+        // This only closes the pages the old PagedForecastCursor loaded itself; the loader
+        // closes its first page.
+        if (null != oldCursor) {
+            oldCursor.close();
+        }
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
+        boolean changed = useTodayLayout != mUseTodayLayout;
         mUseTodayLayout = useTodayLayout;
         if (mForecastAdapter != null) {
             mForecastAdapter.setUseTodayLayout(mUseTodayLayout);
         }
+        // The loader gives each row its view type, so rows already loaded need loading again.
+        if (changed && isAdded() && null != getLoaderManager().getLoader(FORECAST_LOADER)) {
+            getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
+        }
     }
 
     public void setInitialSelectedDate(long initialSelectedDate) {
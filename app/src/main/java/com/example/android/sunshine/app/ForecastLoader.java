@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Loads the forecast list and, on the same background thread, formats its rows and works out
+ * how it differs from the load before, so the adapter only sets views, and only for the rows
+ * that changed.
+ */
+class ForecastLoader extends CursorLoader {
+
+    /**
+     * A loaded cursor along with what it shows, its rows ready to bind, and how it differs
+     * from the last load.
+     */
+    static final class Result extends CursorWrapper {
+        final ForecastDiff.Rows rows;
+        final ForecastRowModel[] models;
+        // Null for the first load, or when nothing carries over from the last one.
+        final ForecastDiff diff;
+
+        Result(Cursor cursor, ForecastDiff.Rows rows, ForecastRowModel[] models,
+               ForecastDiff diff) {
+            super(cursor);
+            this.rows = rows;
+            this.models = models;
+            this.diff = diff;
+        }
+    }
+
+    private final boolean mUseTodayLayout;
+    // What the last delivered load showed.  Set on the main thread, read on the loader's.
+    private volatile ForecastDiff.Rows mDeliveredRows;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String sortOrder,
+                   boolean useTodayLayout) {
+        super(context, uri, projection, null, null, sortOrder);
+        mUseTodayLayout = useTodayLayout;
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) return null;
+        PreferencesSnapshot prefs = PreferencesSnapshot.get(getContext());
+        ForecastDiff.Rows rows = ForecastDiff.Rows.read(cursor,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(getUri()),
+                prefs, System.currentTimeMillis());
+        ForecastRowModel[] models = ForecastRowModel.readAll(getContext(), cursor, prefs,
+                mUseTodayLayout);
+        ForecastDiff.Rows previous = mDeliveredRows;
+        return new Result(cursor, rows, models,
+                previous == null ? null : ForecastDiff.compute(previous, rows));
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset() && cursor instanceof Result) {
+            mDeliveredRows = ((Result) cursor).rows;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * Everything a forecast row shows, formatted ahead of time so binding it is only setting
+ * views.  The loader builds these on its background thread for the rows it loads.
+ *
+ * The day label is the exception: "Today" and "Tomorrow" go stale at midnight while the model
+ * doesn't, so only the date is kept, and the label is looked up when the row is bound.
+ * WeatherFormatter keeps each day's label until the day changes, so that is a cache hit.
+ */
+final class ForecastRowModel {
+
+    static final int VIEW_TYPE_TODAY = 0;
+    static final int VIEW_TYPE_FUTURE_DAY = 1;
+
+    final int viewType;
+    final long date;
+    final int iconResource;
+    final int artResource;
+    // Null when the art pack is the local one.
+    final String artUrl;
+    final String description;
+    final String descriptionA11y;
+    final String high;
+    final String highA11y;
+    final String low;
+    final String lowA11y;
+
+    private ForecastRowModel(Context context, Cursor cursor, PreferencesSnapshot prefs,
+                             int viewType) {
+        this.viewType = viewType;
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = prefs.localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+
+        high = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP), prefs.metric);
+        highA11y = context.getString(R.string.a11y_high_temp, high);
+        low = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP), prefs.metric);
+        lowA11y = context.getString(R.string.a11y_low_temp, low);
+    }
+
+    /**
+     * Builds the model for the row the cursor is on.
+     */
+    static ForecastRowModel read(Context context, Cursor cursor, PreferencesSnapshot prefs,
+                                 int viewType) {
+        return new ForecastRowModel(context, cursor, prefs, viewType);
+    }
+
+    /**
+     * @return the view type of the row at the position, the first row having the today layout
+     * if the list uses it
+     */
+    static int getViewType(int position, boolean useTodayLayout) {
+        return (position == 0 && useTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
+    }
+
+    /**
+     * Builds a model for every row of a cursor with ForecastFragment's columns, leaving it
+     * before its first row.
+     */
+    static ForecastRowModel[] readAll(Context context, Cursor cursor, PreferencesSnapshot prefs,
+                                      boolean useTodayLayout) {
+        ForecastRowModel[] models = new ForecastRowModel[cursor.getCount()];
+        for (int i = 0; i < models.length && cursor.moveToPosition(i); i++) {
+            models[i] = new ForecastRowModel(context, cursor, prefs,
+                    getViewType(i, useTodayLayout));
+        }
+        cursor.moveToPosition(-1);
+        return models;
+    }
+}
@@ -27,6 +27,9 @@ import android.util.AttributeSet;
 import android.widget.Button;
 import android.widget.EditText;
 
+import com.example.android.sunshine.app.sync.LocationValidator;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
     private int mMinLength;
@@ -73,6 +76,12 @@ public class LocationEditTextPreference extends EditTextPreference {
                     if (s.length() < mMinLength) {
                         // Disable OK button
                         positiveButton.setEnabled(false);
+                    } else if (LocationValidator.getInstance().getKnownStatus(s.toString())
+                            == SunshineSyncAdapter.LOCATION_STATUS_INVALID) {
+                        // Already turned down by the server, so don't let it be saved
+                        positiveButton.setEnabled(false);
+                        getEditText().setError(getContext().getString(
+                                R.string.pref_location_error_description, s.toString()));
                     } else {
                         // Re-enable the button.
                         positiveButton.setEnabled(true);
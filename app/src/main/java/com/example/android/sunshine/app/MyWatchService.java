@@ -10,6 +10,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.ForecastFile;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -73,12 +74,20 @@ public class MyWatchService extends IntentService implements GoogleApiClient.Con
     @Override
     public void onConnected(@Nullable Bundle bundle) {
 
-        // Once connected, query the db and retrieve the weather data.
+        // Once connected, read today's weather from the forecast file the sync writes, or
+        // query the db if the file can't answer.
+
+        String locationSetting = Utility.getPreferredLocation(getBaseContext());
+        ForecastFile.Day today = ForecastFile.getInstance(this)
+                .readToday(locationSetting, System.currentTimeMillis());
+        if (today != null) {
+            putWeatherData(today.high, today.low, today.weatherId);
+            return;
+        }
 
         // Sort order:  Ascending, by date.
         String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
-        String locationSetting = Utility.getPreferredLocation(getBaseContext());
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
@@ -101,29 +110,7 @@ public class MyWatchService extends IntentService implements GoogleApiClient.Con
                 double minTemp = cursor.getDouble(cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
                 int weatherID = cursor.getInt(cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
 
-                String sMaxTemp = Utility.formatTemperature(getBaseContext(), maxTemp);
-                String sMinTemp = Utility.formatTemperature(getBaseContext(), minTemp);
-
-                Log.d(TAG, "RETRIEVED DATA: " + sMaxTemp + " - " + sMinTemp + " - " + weatherID);
-
-                PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEAR_WEATHER_DATA_PATH);
-                putDataMapRequest.getDataMap().putString("DATA_KEY_MAX_TEMP", sMaxTemp);
-                putDataMapRequest.getDataMap().putString("DATA_KEY_MIN_TEMP", sMinTemp);
-                putDataMapRequest.getDataMap().putInt("DATA_KEY_WEATHER_ID", weatherID);
-
-                PutDataRequest request = putDataMapRequest.asPutDataRequest().setUrgent();
-
-                Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                        .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                            @Override
-                            public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-
-                                // Remember the success here tells the object has been stored locally
-                                // and it doesn't tell if the received received it successfully or not.
-
-                                Log.d(TAG, "RESULT: " + dataItemResult.getStatus().isSuccess());
-                            }
-                        });
+                putWeatherData(maxTemp, minTemp, weatherID);
             }
 
             cursor.close();
@@ -137,6 +124,33 @@ public class MyWatchService extends IntentService implements GoogleApiClient.Con
 
     }
 
+    private void putWeatherData(double maxTemp, double minTemp, int weatherID) {
+
+        String sMaxTemp = Utility.formatTemperature(getBaseContext(), maxTemp);
+        String sMinTemp = Utility.formatTemperature(getBaseContext(), minTemp);
+
+        Log.d(TAG, "RETRIEVED DATA: " + sMaxTemp + " - " + sMinTemp + " - " + weatherID);
+
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEAR_WEATHER_DATA_PATH);
+        putDataMapRequest.getDataMap().putString("DATA_KEY_MAX_TEMP", sMaxTemp);
+        putDataMapRequest.getDataMap().putString("DATA_KEY_MIN_TEMP", sMinTemp);
+        putDataMapRequest.getDataMap().putInt("DATA_KEY_WEATHER_ID", weatherID);
+
+        PutDataRequest request = putDataMapRequest.asPutDataRequest().setUrgent();
+
+        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+                    @Override
+                    public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
+
+                        // Remember the success here tells the object has been stored locally
+                        // and it doesn't tell if the received received it successfully or not.
+
+                        Log.d(TAG, "RESULT: " + dataItemResult.getStatus().isSuccess());
+                    }
+                });
+    }
+
     // GoogleApiClient.ConnectionCallbacks
     @Override
     public void onConnectionSuspended(int i) {
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * A cursor over a location's forecast that is read one page at a time using the provider's
+ * keyset-paged URIs.  It starts with the first page (which the loader queried, and which
+ * carries the loader's change notifications) and grows by {@link #loadNextPage}.
+ *
+ * Only the first page and the most recently used {@code maxResidentPages} others stay open.
+ * Pages are queried on a background thread, never on the thread reading the cursor: a row
+ * whose page was closed can't be moved to until {@link #reloadPage} has queried it again, by
+ * the same key, and the {@link PageListener} has been told.  Every other method is for the
+ * main thread, which is where the listener is called.
+ */
+class PagedForecastCursor extends AbstractCursor {
+
+    // A sync stores fourteen days, so the first week is loaded up front and the second as the
+    // list scrolls towards it.
+    static final int PAGE_SIZE = 7;
+    static final int MAX_RESIDENT_PAGES = 4;
+
+    private static final String SORT_ORDER = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    // One thread, so pages arrive in the order they were asked for.
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Told on the main thread when rows become readable.
+     */
+    interface PageListener {
+        // A new page was added at the end.
+        void onRowsInserted(int positionStart, int itemCount);
+        // A page that had been closed can be read again.
+        void onRowsReloaded(int positionStart, int itemCount);
+    }
+
+    private static final class Page {
+        // Position of the page's first row, and the date the rows come after (-1 for the first).
+        final int start;
+        final long afterDate;
+        int count;
+        long lastDate;
+        Cursor cursor;
+        boolean loading;
+
+        Page(int start, long afterDate) {
+            this.start = start;
+            this.afterDate = afterDate;
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final String mLocationSetting;
+    private final String[] mProjection;
+    private final int mDateColumn;
+    private final int mPageSize;
+    private final int mMaxResidentPages;
+    private final String[] mColumnNames;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ArrayList<Page> mPages = new ArrayList<Page>();
+    // Open pages other than the first, most recently used first.
+    private final LinkedList<Page> mResidentPages = new LinkedList<Page>();
+    private int mCount;
+    private boolean mHasMore;
+    private boolean mNextPageLoading;
+    private Cursor mCurrent;
+    private int mPeakResidentRows;
+    private PageListener mListener;
+
+    PagedForecastCursor(ContentResolver resolver, String locationSetting, String[] projection,
+                        int dateColumn, Cursor firstPage) {
+        this(resolver, locationSetting, projection, dateColumn, PAGE_SIZE, MAX_RESIDENT_PAGES,
+                firstPage);
+    }
+
+    PagedForecastCursor(ContentResolver resolver, String locationSetting, String[] projection,
+                        int dateColumn, int pageSize, int maxResidentPages, Cursor firstPage) {
+        mResolver = resolver;
+        mLocationSetting = locationSetting;
+        mProjection = projection;
+        mDateColumn = dateColumn;
+        mPageSize = pageSize;
+        mMaxResidentPages = maxResidentPages;
+        mColumnNames = firstPage.getColumnNames();
+
+        Page page = new Page(0, -1);
+        setRows(page, firstPage);
+        mPages.add(page);
+        mCount = page.count;
+        mHasMore = page.count >= mPageSize;
+        mPeakResidentRows = mCount;
+    }
+
+    private void setRows(Page page, Cursor cursor) {
+        page.cursor = cursor;
+        page.count = cursor.getCount();
+        if (cursor.moveToLast()) {
+            page.lastDate = cursor.getLong(mDateColumn);
+        }
+    }
+
+    void setPageListener(PageListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return true if the last page was full, so there may be more rows after it.
+     */
+    boolean hasMore() {
+        return mHasMore;
+    }
+
+    /**
+     * @return true if the row's page is open, so the cursor can move to it.
+     */
+    boolean isResident(int position) {
+        return findPage(position).cursor != null;
+    }
+
+    /**
+     * Starts querying the page after the last one loaded, unless that is already under way.
+     * The listener is told about the new rows; at the end of the forecast there are none, and
+     * {@link #hasMore} turns false.
+     */
+    void loadNextPage() {
+        if (!mHasMore || mNextPageLoading || isClosed()) return;
+        mNextPageLoading = true;
+        final long afterDate = mPages.get(mPages.size() - 1).lastDate;
+        queryPage(afterDate, new PageCallback() {
+            @Override
+            public void onPageQueried(Cursor cursor) {
+                mNextPageLoading = false;
+                if (cursor == null || cursor.getCount() == 0) {
+                    if (cursor != null) cursor.close();
+                    mHasMore = false;
+                    return;
+                }
+                Page page = new Page(mCount, afterDate);
+                setRows(page, cursor);
+                mPages.add(page);
+                makeResident(page);
+                mCount += page.count;
+                mHasMore = page.count >= mPageSize;
+                if (mListener != null) {
+                    mListener.onRowsInserted(page.start, page.count);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts querying the page the row is on again, if it was closed and isn't already being
+     * queried.
+     */
+    void reloadPage(int position) {
+        final Page page = findPage(position);
+        if (page.cursor != null || page.loading || isClosed()) return;
+        page.loading = true;
+        queryPage(page.afterDate, new PageCallback() {
+            @Override
+            public void onPageQueried(Cursor cursor) {
+                page.loading = false;
+                if (cursor == null) return;
+                // The loader restarts on any change, so a reloaded page normally has the same
+                // rows.  If they changed in the meantime the page keeps the size it was loaded
+                // with, so getCount() and the positions of later pages stay the same until the
+                // new cursor arrives; rows past the end of a shorter page just can't be read.
+                page.cursor = cursor;
+                makeResident(page);
+                if (mListener != null) {
+                    mListener.onRowsReloaded(page.start, page.count);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the most rows held open at once, across all pages.
+     */
+    int getPeakResidentRows() {
+        return mPeakResidentRows;
+    }
+
+    private interface PageCallback {
+        // Called on the main thread with the page, or null if the query failed.
+        void onPageQueried(Cursor cursor);
+    }
+
+    private void queryPage(final long afterDate, final PageCallback callback) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Cursor cursor = mResolver.query(
+                        WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                                mLocationSetting, afterDate, mPageSize),
+                        mProjection,
+                        null,
+                        null,
+                        SORT_ORDER);
+                // Fill the window here rather than on the first read.
+                if (cursor != null) cursor.getCount();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isClosed()) {
+                            if (cursor != null) cursor.close();
+                            return;
+                        }
+                        callback.onPageQueried(cursor);
+                    }
+                });
+            }
+        });
+    }
+
+    private void makeResident(Page page) {
+        if (page.start == 0) return;
+        mResidentPages.remove(page);
+        mResidentPages.addFirst(page);
+        while (mResidentPages.size() > mMaxResidentPages) {
+            Page evicted = mResidentPages.removeLast();
+            evicted.cursor.close();
+            evicted.cursor = null;
+        }
+        int residentRows = mPages.get(0).count;
+        for (Page resident : mResidentPages) {
+            residentRows += resident.count;
+        }
+        mPeakResidentRows = Math.max(mPeakResidentRows, residentRows);
+    }
+
+    private Page findPage(int position) {
+        int lo = 0;
+        int hi = mPages.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mPages.get(mid).start <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return mPages.get(lo);
+    }
+
+    /*
+        Fails, rather than blocking on a query, for a row whose page is closed.
+     */
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        Page page = findPage(newPosition);
+        if (page.cursor == null) {
+            mCurrent = null;
+            return false;
+        }
+        makeResident(page);
+        mCurrent = page.cursor;
+        return mCurrent.moveToPosition(newPosition - page.start);
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCurrent.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCurrent.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCurrent.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCurrent.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCurrent.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCurrent.getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCurrent.getBlob(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCurrent.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCurrent.isNull(column);
+    }
+
+    /**
+     * Closes the pages this cursor queried.  The first page belongs to the loader, which closes
+     * it itself.
+     */
+    @Override
+    public void close() {
+        super.close();
+        for (Page page : mResidentPages) {
+            page.cursor.close();
+            page.cursor = null;
+        }
+        mResidentPages.clear();
+        mCurrent = null;
+        mListener = null;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * The user's display preferences as of the last change, so bind and draw paths read fields
+ * instead of going through SharedPreferences and resource lookups for every row.
+ *
+ * A snapshot never changes.  A listener on the default preferences builds a new one whenever
+ * any of them changes, and readers pick up whichever snapshot is current.  SharedPreferences
+ * delivers that change on the main thread, so a thread that has just committed a change may
+ * read the old snapshot until the main thread gets to it.
+ */
+public final class PreferencesSnapshot {
+
+    public final String location;
+    public final boolean metric;
+    // The art pack's URL format.
+    public final String artPack;
+    public final boolean localGraphics;
+
+    private static volatile PreferencesSnapshot sCurrent;
+    // SharedPreferences only holds its listeners weakly, so this keeps ours registered.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private PreferencesSnapshot(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        localGraphics = artPack.equals(sunshineArtPack);
+    }
+
+    /**
+     * @return the current snapshot.  The first call reads the preferences and starts listening
+     * for changes; every later call is a field read.
+     */
+    public static PreferencesSnapshot get(Context context) {
+        PreferencesSnapshot snapshot = sCurrent;
+        return snapshot != null ? snapshot : init(context.getApplicationContext());
+    }
+
+    private static synchronized PreferencesSnapshot init(final Context context) {
+        if (sCurrent == null) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    rebuild(context, prefs);
+                }
+            };
+            // Listen before reading, so a change made while we read isn't missed.
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            rebuild(context, prefs);
+        }
+        return sCurrent;
+    }
+
+    // Locked so a slow first read can't publish over a newer snapshot from the listener.
+    private static synchronized void rebuild(Context context, SharedPreferences prefs) {
+        sCurrent = new PreferencesSnapshot(context, prefs);
+    }
+}
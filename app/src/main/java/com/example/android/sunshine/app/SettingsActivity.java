@@ -26,6 +26,7 @@ import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.LocationValidator;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -135,7 +136,11 @@ public class SettingsActivity extends PreferenceActivity
             // we've changed the location
             // first clear locationStatus
             Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
+            // check the location before paying for its forecast
+            // Read from the preferences given to us: listeners run in no particular order, so
+            // the snapshot behind Utility.getPreferredLocation may still hold the old location.
+            LocationValidator.getInstance().validateThenSync(this,
+                    sharedPreferences.getString(key, getString(R.string.pref_location_default)));
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
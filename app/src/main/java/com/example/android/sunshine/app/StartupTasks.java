@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.example.android.sunshine.app.gcm.RegistrationIntentService;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The work a cold start needs done that the first screen doesn't: making sure the sync account
+ * exists, which may create it and start the first sync, and checking Play Services and
+ * registering for GCM.  Both go through binder calls into system services and Play Services,
+ * so they wait until the first frame, showing whatever forecast is already stored, has been
+ * drawn, and then run on a background thread.
+ *
+ * Only a result that needs the user, a Play Services error dialog, comes back, and not to the
+ * activity that started the check, which may be gone by then: it is kept until a
+ * {@link PlayServicesErrorHandler} is resumed, and handed to that.  Nothing here holds on to an
+ * activity once its first frame is drawn.
+ */
+final class StartupTasks {
+    private static final String LOG_TAG = StartupTasks.class.getSimpleName();
+
+    /** Told, on the main thread and while resumed, when Play Services needs the user. */
+    interface PlayServicesErrorHandler {
+        void onPlayServicesError(int resultCode);
+    }
+
+    // The sync account outlives the activity, so once a process is enough.  Play Services can be
+    // updated or disabled while the app is in the background, so that is checked every time an
+    // activity is created, as it always was.  These are only touched on the main thread.
+    private static boolean sAccountChecked;
+    private static int sPendingPlayServicesError = ConnectionResult.SUCCESS;
+    private static WeakReference<PlayServicesErrorHandler> sResumedHandler;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "StartupTasks");
+                }
+            });
+
+    private StartupTasks() {
+    }
+
+    /**
+     * Runs the startup work after the activity's first frame.  Call from onCreate, once the
+     * content view is set.
+     */
+    static void runAfterFirstDraw(Activity activity) {
+        final Context context = activity.getApplicationContext();
+        final View decor = activity.getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted, so it is queued behind the frame that is about to be drawn.
+                decor.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        final boolean checkAccount = !sAccountChecked;
+                        sAccountChecked = true;
+                        sExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                runTasks(context, checkAccount);
+                            }
+                        });
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Call from the handler's onResume.  Hands it any Play Services error not yet shown.
+     */
+    static void onResume(PlayServicesErrorHandler handler) {
+        sResumedHandler = new WeakReference<PlayServicesErrorHandler>(handler);
+        deliverPlayServicesError();
+    }
+
+    /**
+     * Call from the handler's onPause.
+     */
+    static void onPause(PlayServicesErrorHandler handler) {
+        if (sResumedHandler != null && sResumedHandler.get() == handler) {
+            sResumedHandler = null;
+        }
+    }
+
+    private static void deliverPlayServicesError() {
+        PlayServicesErrorHandler handler = sResumedHandler != null ? sResumedHandler.get() : null;
+        if (handler == null || sPendingPlayServicesError == ConnectionResult.SUCCESS) {
+            return;
+        }
+        int resultCode = sPendingPlayServicesError;
+        sPendingPlayServicesError = ConnectionResult.SUCCESS;
+        handler.onPlayServicesError(resultCode);
+    }
+
+    private static void runTasks(Context context, boolean checkAccount) {
+        long start = SystemClock.elapsedRealtime();
+        if (checkAccount) {
+            SunshineSyncAdapter.initializeSyncAdapter(context);
+        }
+        long synced = SystemClock.elapsedRealtime();
+
+        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
+        // skip the registration and this device will not receive any downstream messages from
+        // our fake server. Because weather alerts are not a core feature of the app, this should
+        // not affect the behavior of the app, from a user perspective.
+        final int resultCode = GoogleApiAvailability.getInstance()
+                .isGooglePlayServicesAvailable(context);
+        if (resultCode == ConnectionResult.SUCCESS) {
+            // Because this is the initial creation of the app, we'll want to be certain we have
+            // a token. If we do not, then we will start the IntentService that will register this
+            // application with GCM.
+            boolean sentToken = PreferenceManager.getDefaultSharedPreferences(context)
+                    .getBoolean(MainActivity.SENT_TOKEN_TO_SERVER, false);
+            if (!sentToken) {
+                context.startService(new Intent(context, RegistrationIntentService.class));
+            }
+        } else {
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    sPendingPlayServicesError = resultCode;
+                    deliverPlayServicesError();
+                }
+            });
+        }
+        long registered = SystemClock.elapsedRealtime();
+        Log.d(LOG_TAG, "Startup tasks took " + (registered - start) + "ms: sync account "
+                + (synced - start) + "ms, GCM " + (registered - synced) + "ms");
+    }
+}
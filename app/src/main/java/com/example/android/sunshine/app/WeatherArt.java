@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.bumptech.glide.BitmapRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads art pack images for the list, the detail pane, widgets and notifications, all through
+ * the same Glide request.  The art URL stands for the condition and the art pack, and every
+ * request asks for the size it will be shown at, so Glide's memory cache holds one decoded
+ * bitmap per (condition, art pack, size) and every one of those places shares it.
+ */
+public final class WeatherArt {
+
+    private static final String LOG_TAG = WeatherArt.class.getSimpleName();
+
+    // How often the hit rate is logged, in requests.
+    private static final int LOG_EVERY = 100;
+
+    private static final AtomicInteger sHits = new AtomicInteger();
+    private static final AtomicInteger sMisses = new AtomicInteger();
+
+    // Counts whether each request was served from memory.  Prefetches don't go through it, so a
+    // bind that finds prefetched art counts as the hit it is.
+    private static final RequestListener<String, Bitmap> sStats =
+            new RequestListener<String, Bitmap>() {
+                @Override
+                public boolean onException(Exception e, String model, Target<Bitmap> target,
+                                           boolean isFirstResource) {
+                    count(false);
+                    return false;
+                }
+
+                @Override
+                public boolean onResourceReady(Bitmap resource, String model,
+                                               Target<Bitmap> target, boolean isFromMemoryCache,
+                                               boolean isFirstResource) {
+                    count(isFromMemoryCache);
+                    return false;
+                }
+            };
+
+    private WeatherArt() {
+    }
+
+    /**
+     * @return the size of the icon on the today row and in the detail pane, in pixels
+     */
+    public static int getTodayIconSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+    }
+
+    /**
+     * @return the size of the icon on every other row, in the app and the widget, in pixels
+     */
+    public static int getListIconSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    /**
+     * Shows the art in the view, fading it in if it had to be fetched or decoded.
+     *
+     * @param size the largest the view shows the art at, in pixels
+     * @param errorResource what to show instead if the art can't be loaded
+     */
+    static void load(RequestManager glide, String artUrl, int size, int errorResource,
+                     ImageView view) {
+        request(glide, artUrl, size, size)
+                .listener(sStats)
+                .error(errorResource)
+                .animate(android.R.anim.fade_in)
+                .into(view);
+    }
+
+    /**
+     * Fetches and decodes the art into the memory cache, so a later {@link #load} of the same
+     * art at the same size finds it there.
+     */
+    static void prefetch(RequestManager glide, String artUrl, int size) {
+        request(glide, artUrl, size, size).into(new PrefetchTarget(size, size));
+    }
+
+    /**
+     * Loads the art, scaled to fit the size, blocking until it's ready.  Must not be called on
+     * the main thread.
+     *
+     * @param errorResource what to decode instead if the art can't be loaded
+     */
+    public static Bitmap get(Context context, String artUrl, int errorResource, int width,
+                             int height) throws InterruptedException, ExecutionException {
+        return submit(context, artUrl, errorResource, width, height).get();
+    }
+
+    /**
+     * Starts loading the art, scaled to fit the size, without waiting for it.  Loads started
+     * together run in parallel on Glide's threads.
+     */
+    public static FutureTarget<Bitmap> submit(Context context, String artUrl, int errorResource,
+                                              int width, int height) {
+        return request(Glide.with(context.getApplicationContext()), artUrl, width, height)
+                .listener(sStats)
+                .error(errorResource)
+                .into(width, height);
+    }
+
+    public static int getHitCount() {
+        return sHits.get();
+    }
+
+    public static int getMissCount() {
+        return sMisses.get();
+    }
+
+    /*
+        Everything that affects Glide's cache key is set here and only here, so requests from
+        different places for the same art and size match.
+     */
+    private static BitmapRequestBuilder<String, Bitmap> request(RequestManager glide,
+                                                                String artUrl, int width,
+                                                                int height) {
+        return glide.load(artUrl)
+                .asBitmap()
+                .fitCenter()
+                .override(width, height);
+    }
+
+    private static void count(boolean hit) {
+        int hits = hit ? sHits.incrementAndGet() : sHits.get();
+        int misses = hit ? sMisses.get() : sMisses.incrementAndGet();
+        int requests = hits + misses;
+        if (requests % LOG_EVERY == 0) {
+            Log.d(LOG_TAG, String.format("Art served from memory for %d of %d requests (%.1f%%)",
+                    hits, requests, 100.0 * hits / requests));
+        }
+    }
+
+    /*
+        Lets go of the bitmap as soon as it's decoded, which moves it into the memory cache
+        rather than keeping it held by a target nobody shows.
+     */
+    private static final class PrefetchTarget extends SimpleTarget<Bitmap> {
+        PrefetchTarget(int width, int height) {
+            super(width, height);
+        }
+
+        @Override
+        public void onResourceReady(Bitmap resource,
+                                    GlideAnimation<? super Bitmap> glideAnimation) {
+            Glide.clear(this);
+        }
+    }
+}
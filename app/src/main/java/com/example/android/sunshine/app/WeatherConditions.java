@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Locale;
+
+/**
+ * Lookup tables from OpenWeatherMap condition ids to what we show for them, indexed directly by
+ * id.  They are filled once, from the rules in {@link #groupOf} and the string list below, so
+ * the rules stay readable while lookups cost an array read.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditions {
+
+    // Condition ids run from 200 to 962.
+    static final int MAX_ID = 999;
+
+    // Groups of ids that share their icon, art and image.
+    private static final int NONE = 0;
+    private static final int STORM = 1;
+    private static final int LIGHT_RAIN = 2;
+    private static final int RAIN = 3;
+    private static final int SNOW = 4;
+    private static final int FOG = 5;
+    private static final int TORNADO = 6;
+    private static final int CLEAR = 7;
+    private static final int LIGHT_CLOUDS = 8;
+    private static final int CLOUDS = 9;
+
+    // Indexed by group.
+    private static final int[] ICONS = {
+            -1,
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_storm,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+    private static final int[] ART = {
+            -1,
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_storm,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+    // The name an art pack's URL format is filled in with.
+    private static final String[] ART_NAMES = {
+            null,
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "storm",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+    private static final String[] IMAGE_URLS = {
+            null,
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    // Ids with a description of their own, and the description.
+    private static final int[] STRING_IDS = {
+            500, R.string.condition_500,
+            501, R.string.condition_501,
+            502, R.string.condition_502,
+            503, R.string.condition_503,
+            504, R.string.condition_504,
+            511, R.string.condition_511,
+            520, R.string.condition_520,
+            531, R.string.condition_531,
+            600, R.string.condition_600,
+            601, R.string.condition_601,
+            602, R.string.condition_602,
+            611, R.string.condition_611,
+            612, R.string.condition_612,
+            615, R.string.condition_615,
+            616, R.string.condition_616,
+            620, R.string.condition_620,
+            621, R.string.condition_621,
+            622, R.string.condition_622,
+            701, R.string.condition_701,
+            711, R.string.condition_711,
+            721, R.string.condition_721,
+            731, R.string.condition_731,
+            741, R.string.condition_741,
+            751, R.string.condition_751,
+            761, R.string.condition_761,
+            762, R.string.condition_762,
+            771, R.string.condition_771,
+            781, R.string.condition_781,
+            800, R.string.condition_800,
+            801, R.string.condition_801,
+            802, R.string.condition_802,
+            803, R.string.condition_803,
+            804, R.string.condition_804,
+            900, R.string.condition_900,
+            901, R.string.condition_901,
+            902, R.string.condition_902,
+            903, R.string.condition_903,
+            904, R.string.condition_904,
+            905, R.string.condition_905,
+            906, R.string.condition_906,
+            951, R.string.condition_951,
+            952, R.string.condition_952,
+            953, R.string.condition_953,
+            954, R.string.condition_954,
+            955, R.string.condition_955,
+            956, R.string.condition_956,
+            957, R.string.condition_957,
+            958, R.string.condition_958,
+            959, R.string.condition_959,
+            960, R.string.condition_960,
+            961, R.string.condition_961,
+            962, R.string.condition_962
+    };
+
+    private static final byte[] sGroups = new byte[MAX_ID + 1];
+    // 0 where the id has no description.
+    private static final int[] sStrings = new int[MAX_ID + 1];
+
+    static {
+        for (int id = 0; id <= MAX_ID; id++) {
+            sGroups[id] = (byte) groupOf(id);
+        }
+        for (int id = 200; id <= 232; id++) {
+            sStrings[id] = R.string.condition_2xx;
+        }
+        for (int id = 300; id <= 321; id++) {
+            sStrings[id] = R.string.condition_3xx;
+        }
+        for (int i = 0; i < STRING_IDS.length; i += 2) {
+            sStrings[STRING_IDS[i]] = STRING_IDS[i + 1];
+        }
+    }
+
+    // The art pack the URLs below were built for.  Only one pack is in use at a time, so one
+    // entry is enough; it's swapped as a pair so readers never mix packs.
+    private static final class ArtPack {
+        final String format;
+        final String[] urls = new String[ART_NAMES.length];
+
+        ArtPack(String format) {
+            this.format = format;
+            for (int group = 1; group < ART_NAMES.length; group++) {
+                urls[group] = String.format(Locale.US, format, ART_NAMES[group]).intern();
+            }
+        }
+    }
+
+    private static volatile ArtPack sArtPack;
+
+    private WeatherConditions() {
+    }
+
+    // First match wins, so 761 is fog and only 781 is a tornado.
+    private static int groupOf(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return RAIN;
+        } else if (weatherId == 511) {
+            return SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return FOG;
+        } else if (weatherId == 781) {
+            return TORNADO;
+        } else if (weatherId == 800) {
+            return CLEAR;
+        } else if (weatherId == 801) {
+            return LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CLOUDS;
+        }
+        return NONE;
+    }
+
+    private static int group(int weatherId) {
+        return weatherId < 0 || weatherId > MAX_ID ? NONE : sGroups[weatherId];
+    }
+
+    static int getIconResource(int weatherId) {
+        return ICONS[group(weatherId)];
+    }
+
+    static int getArtResource(int weatherId) {
+        return ART[group(weatherId)];
+    }
+
+    static String getImageUrl(int weatherId) {
+        return IMAGE_URLS[group(weatherId)];
+    }
+
+    /**
+     * @return the description's string resource, or 0 if the id has none.
+     */
+    static int getStringResource(int weatherId) {
+        return weatherId < 0 || weatherId > MAX_ID ? 0 : sStrings[weatherId];
+    }
+
+    /**
+     * @param artPackFormat the art pack preference, a URL format with one %s for the art name
+     */
+    static String getArtUrl(String artPackFormat, int weatherId) {
+        int group = group(weatherId);
+        if (group == NONE) return null;
+        ArtPack pack = sArtPack;
+        if (pack == null || !pack.format.equals(artPackFormat)) {
+            pack = new ArtPack(artPackFormat);
+            sArtPack = pack;
+        }
+        return pack.urls[group];
+    }
+}
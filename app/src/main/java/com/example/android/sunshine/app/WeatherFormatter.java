@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats temperatures and day labels the way Utility always has, without building formatters
+ * for every call.  Locale-specific strings and formats are built once per locale and time zone,
+ * temperatures are kept per whole degree, and the labels for the next fortnight are kept until
+ * the day changes.  Every string still comes from the same format calls as before, so the
+ * output is identical; the work is just done once.
+ *
+ * The time zone is looked up once and kept, since {@link TimeZone#getDefault} copies it on every
+ * call.  Call {@link #onTimeZoneChanged} when the device's zone changes.
+ */
+final class WeatherFormatter {
+
+    // Days from today whose labels are kept, one per row of a full forecast.
+    static final int WINDOW_DAYS = 14;
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    // Temperatures are kept for whole degrees in this range, Fahrenheit included.
+    private static final int MIN_CACHED_DEGREES = -150;
+    private static final int MAX_CACHED_DEGREES = 200;
+    // 1970-01-04 was a Sunday.
+    private static final int FIRST_SUNDAY_EPOCH_DAY = 3;
+
+    private static final WeatherFormatter sInstance = new WeatherFormatter();
+
+    // What everything below was built for.
+    private Locale mLocale;
+    private Locale mResourceLocale;
+    private TimeZone mZone;
+    private long mToday = Long.MIN_VALUE;
+
+    private String mTemperatureFormat;
+    // Whether the format shows whole degrees only, so one string serves every value that
+    // rounds to the same degree.
+    private boolean mWholeDegrees;
+    private final String[] mTemperatures =
+            new String[MAX_CACHED_DEGREES - MIN_CACHED_DEGREES + 1];
+    // "-0", which the format gives for small negative values.
+    private String mNegativeZero;
+
+    private String mTodayLabel;
+    private String mTomorrowLabel;
+    // Indexed by day of the week, Sunday first.
+    private final String[] mDayNames = new String[7];
+    private SimpleDateFormat mShortDateFormat;
+    private SimpleDateFormat mMonthDayFormat;
+
+    // Labels by days from today.  Each is kept with the date it was made for, since a row's
+    // date can be any time on its day.
+    private long mLongTodayDate;
+    private String mLongTodayLabel;
+    private final long[] mShortDates = new long[WINDOW_DAYS];
+    private final String[] mShortLabels = new String[WINDOW_DAYS];
+    private final long[] mFullDates = new long[WINDOW_DAYS];
+    private final String[] mFullLabels = new String[WINDOW_DAYS];
+
+    private WeatherFormatter() {
+    }
+
+    static WeatherFormatter getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Forgets the time zone, and the formats and labels built for it, so the next call picks up
+     * the default zone again.
+     */
+    synchronized void onTimeZoneChanged() {
+        mZone = null;
+    }
+
+    synchronized String formatTemperature(Context context, double temperature,
+            boolean isMetric) {
+        if (!isMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        refreshLocale(context);
+        if (!mWholeDegrees || Double.isNaN(temperature)
+                || temperature <= MIN_CACHED_DEGREES - 1 || temperature >= MAX_CACHED_DEGREES + 1) {
+            return String.format(mTemperatureFormat, temperature);
+        }
+
+        // The format rounds half up, away from zero, and keeps the sign of values that round
+        // to zero.
+        boolean negative = Double.doubleToRawLongBits(temperature) < 0;
+        double magnitude = Math.abs(temperature);
+        int degrees = (int) magnitude;
+        if (magnitude - degrees >= 0.5) {
+            degrees++;
+        }
+        if (negative && degrees == 0) {
+            if (mNegativeZero == null) {
+                mNegativeZero = String.format(mTemperatureFormat, temperature);
+            }
+            return mNegativeZero;
+        }
+        int index = (negative ? -degrees : degrees) - MIN_CACHED_DEGREES;
+        if (index < 0 || index >= mTemperatures.length) {
+            return String.format(mTemperatureFormat, temperature);
+        }
+        String formatted = mTemperatures[index];
+        if (formatted == null) {
+            formatted = String.format(mTemperatureFormat, temperature);
+            mTemperatures[index] = formatted;
+        }
+        return formatted;
+    }
+
+    synchronized String getFriendlyDayString(Context context, long dateInMillis,
+            boolean displayLongToday) {
+        long now = System.currentTimeMillis();
+        int day = daysFromToday(context, dateInMillis, now);
+
+        if (displayLongToday && day == 0) {
+            if (mLongTodayLabel == null || mLongTodayDate != dateInMillis) {
+                mLongTodayLabel = String.format(context.getString(
+                        R.string.format_full_friendly_date,
+                        mTodayLabel,
+                        mMonthDayFormat.format(dateInMillis)));
+                mLongTodayDate = dateInMillis;
+            }
+            return mLongTodayLabel;
+        } else if (day < 7) {
+            return dayName(dateInMillis, day);
+        } else if (day >= WINDOW_DAYS) {
+            return mShortDateFormat.format(dateInMillis);
+        }
+        if (mShortLabels[day] == null || mShortDates[day] != dateInMillis) {
+            mShortLabels[day] = mShortDateFormat.format(dateInMillis);
+            mShortDates[day] = dateInMillis;
+        }
+        return mShortLabels[day];
+    }
+
+    synchronized String getFullFriendlyDayString(Context context, long dateInMillis) {
+        long now = System.currentTimeMillis();
+        int day = daysFromToday(context, dateInMillis, now);
+        if (day >= 0 && day < WINDOW_DAYS
+                && mFullLabels[day] != null && mFullDates[day] == dateInMillis) {
+            return mFullLabels[day];
+        }
+
+        String label = String.format(context.getString(
+                R.string.format_full_friendly_date,
+                dayName(dateInMillis, day),
+                mMonthDayFormat.format(dateInMillis)));
+        if (day >= 0 && day < WINDOW_DAYS) {
+            mFullLabels[day] = label;
+            mFullDates[day] = dateInMillis;
+        }
+        return label;
+    }
+
+    synchronized String getDayName(Context context, long dateInMillis) {
+        long now = System.currentTimeMillis();
+        return dayName(dateInMillis, daysFromToday(context, dateInMillis, now));
+    }
+
+    synchronized String getFormattedMonthDay(Context context, long dateInMillis) {
+        refresh(context, System.currentTimeMillis());
+        return mMonthDayFormat.format(dateInMillis);
+    }
+
+    private String dayName(long dateInMillis, int day) {
+        if (day == 0) {
+            return mTodayLabel;
+        } else if (day == 1) {
+            return mTomorrowLabel;
+        }
+        // The day of the week the date falls on where it is, as the date format would see it.
+        long epochDay = floorDiv(dateInMillis + mZone.getOffset(dateInMillis), DAY_IN_MILLIS);
+        return mDayNames[(int) floorMod(epochDay - FIRST_SUNDAY_EPOCH_DAY, 7)];
+    }
+
+    /*
+        Days between the date and now, both taken at the zone's offset now, as Utility always
+        counted them.
+     */
+    private int daysFromToday(Context context, long dateInMillis, long now) {
+        refresh(context, now);
+        long offset = mZone.getOffset(now);
+        return (int) (floorDiv(dateInMillis + offset, DAY_IN_MILLIS) - mToday);
+    }
+
+    private void refresh(Context context, long now) {
+        refreshLocale(context);
+        if (mZone == null) {
+            mZone = TimeZone.getDefault();
+            // SimpleDateFormat takes the default zone when it is built.
+            buildDateFormats();
+            mToday = Long.MIN_VALUE;
+        }
+        long today = floorDiv(now + mZone.getOffset(now), DAY_IN_MILLIS);
+        if (today != mToday) {
+            mToday = today;
+            clearLabels();
+        }
+    }
+
+    private void refreshLocale(Context context) {
+        Locale locale = Locale.getDefault();
+        Locale resourceLocale = context.getResources().getConfiguration().locale;
+        if (locale.equals(mLocale) && resourceLocale.equals(mResourceLocale)) return;
+        mLocale = locale;
+        mResourceLocale = resourceLocale;
+
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mWholeDegrees = mTemperatureFormat.indexOf('%') == mTemperatureFormat.lastIndexOf('%')
+                && mTemperatureFormat.contains(".0f");
+        Arrays.fill(mTemperatures, null);
+        mNegativeZero = null;
+
+        mTodayLabel = context.getString(R.string.today);
+        mTomorrowLabel = context.getString(R.string.tomorrow);
+        if (mZone != null) {
+            buildDateFormats();
+        }
+    }
+
+    private void buildDateFormats() {
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+        // Formatting the name alone, in the same pattern as before, keeps whatever form of it
+        // the locale uses there.
+        SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < mDayNames.length; i++) {
+            mDayNames[i] = dayFormat.format((FIRST_SUNDAY_EPOCH_DAY + i) * DAY_IN_MILLIS);
+        }
+        clearLabels();
+    }
+
+    private void clearLabels() {
+        mLongTodayLabel = null;
+        Arrays.fill(mShortLabels, null);
+        Arrays.fill(mFullLabels, null);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rows a write touched, by location setting and date.  WeatherProvider fills one of these
+ * per write (or per applyBatch), then uses it after the commit to drop exactly the cached
+ * results that could have changed and to notify only the URIs that cover them.
+ *
+ * Loaders register on the URI they queried with notifyForDescendants set, and ContentService
+ * wakes an observer for any change at, above or below its URI.  So a change to one day of
+ * "94043" is sent as weather/94043/&lt;date&gt;: it reaches the forecast list for 94043 and that
+ * day's detail view, but not other days' details or any other location.
+ */
+final class ChangeSet {
+
+    // Location setting -> changed dates, or null if any date of that location may have changed.
+    private final Map<String, Set<Long>> mWeather = new HashMap<String, Set<Long>>();
+    private final Set<String> mLocations = new HashSet<String>();
+    private boolean mAllWeather;
+    private boolean mAllLocations;
+
+    void addWeather(String locationSetting, long date) {
+        if (mWeather.containsKey(locationSetting)) {
+            Set<Long> dates = mWeather.get(locationSetting);
+            if (dates != null) dates.add(date);
+        } else {
+            Set<Long> dates = new HashSet<Long>();
+            dates.add(date);
+            mWeather.put(locationSetting, dates);
+        }
+    }
+
+    void addWeatherLocation(String locationSetting) {
+        mWeather.put(locationSetting, null);
+    }
+
+    /** For weather rows that can't be tied to a location. */
+    void addAllWeather() {
+        mAllWeather = true;
+    }
+
+    /** A location row changed, so every weather row joined to it did too. */
+    void addLocation(String locationSetting) {
+        mLocations.add(locationSetting);
+        addWeatherLocation(locationSetting);
+    }
+
+    void addAllLocations() {
+        mAllLocations = true;
+        mAllWeather = true;
+    }
+
+    void addAll(ChangeSet other) {
+        for (Map.Entry<String, Set<Long>> entry : other.mWeather.entrySet()) {
+            if (entry.getValue() == null) {
+                addWeatherLocation(entry.getKey());
+            } else {
+                for (Long date : entry.getValue()) {
+                    addWeather(entry.getKey(), date);
+                }
+            }
+        }
+        mLocations.addAll(other.mLocations);
+        mAllWeather |= other.mAllWeather;
+        mAllLocations |= other.mAllLocations;
+    }
+
+    boolean isEmpty() {
+        return mWeather.isEmpty() && mLocations.isEmpty() && !mAllWeather && !mAllLocations;
+    }
+
+    void invalidate(ForecastSnapshotStore snapshots, ForecastFile file) {
+        if (mAllWeather) {
+            snapshots.invalidateAll();
+            file.invalidate(null);
+            return;
+        }
+        for (String locationSetting : mWeather.keySet()) {
+            snapshots.invalidate(locationSetting);
+            file.invalidate(locationSetting);
+        }
+    }
+
+    /**
+     * The fewest URIs that reach every observer whose results changed.  A location with several
+     * changed days gets one URI for the whole location rather than one per day, so the forecast
+     * list re-queries once per sync instead of once per row.
+     */
+    List<Uri> getNotifyUris() {
+        List<Uri> uris = new ArrayList<Uri>();
+        if (mAllLocations || !mLocations.isEmpty()) {
+            uris.add(WeatherContract.LocationEntry.CONTENT_URI);
+        }
+        if (mAllWeather) {
+            uris.add(WeatherContract.WeatherEntry.CONTENT_URI);
+            return uris;
+        }
+        for (Map.Entry<String, Set<Long>> entry : mWeather.entrySet()) {
+            Uri locationUri = WeatherContract.WeatherEntry.buildWeatherLocation(entry.getKey());
+            Set<Long> dates = entry.getValue();
+            if (dates != null && dates.size() == 1) {
+                // Dates are already normalized, so don't run them through buildWeatherLocationWithDate.
+                uris.add(locationUri.buildUpon()
+                        .appendPath(Long.toString(dates.iterator().next())).build());
+            } else {
+                uris.add(locationUri);
+            }
+        }
+        return uris;
+    }
+}
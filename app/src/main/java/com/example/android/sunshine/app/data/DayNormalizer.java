@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.text.format.Time;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Day arithmetic in the default time zone, giving exactly what {@link Time} gives without
+ * building one per date.  Days are counted from the epoch the way {@link Time#getJulianDay}
+ * counts them, and the start of each day is remembered per zone, so turning a date into the
+ * start of its day costs an offset lookup and an array read once the day has been seen.
+ *
+ * The zone is looked up once and kept, since {@link TimeZone#getDefault} copies it on every
+ * call.  Call {@link #onTimeZoneChanged} when the device's zone changes, as
+ * {@link com.example.android.sunshine.app.TimeZoneChangedReceiver} does.
+ */
+public final class DayNormalizer {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    // Wider than any offset change a zone has made; Samoa skipped a whole day in 2011.
+    private static final long TRANSITION_MARGIN_MILLIS = 2 * DAY_IN_MILLIS;
+    // A power of two, so the day picks its slot with a mask.  Enough for a forecast, the
+    // history archive's months and the dates in the URIs being built.
+    private static final int CACHE_SIZE = 512;
+
+    private static volatile ZoneDays sZoneDays;
+
+    private DayNormalizer() {
+    }
+
+    /**
+     * @return the start of the day the date falls on, as {@link WeatherContract#normalizeDate}
+     * has always given it
+     */
+    public static long normalizeDate(long millis) {
+        ZoneDays zoneDays = zoneDays();
+        return zoneDays.startOfDay(zoneDays.epochDay(millis));
+    }
+
+    /**
+     * @return the day the date falls on, counted from the epoch at the zone's offset then
+     */
+    public static long epochDay(long millis) {
+        return zoneDays().epochDay(millis);
+    }
+
+    /**
+     * @return the start of a day counted from the epoch, as {@link Time#setJulianDay} gives it
+     */
+    public static long startOfDay(long epochDay) {
+        return zoneDays().startOfDay(epochDay);
+    }
+
+    /**
+     * Forgets the zone, and the days worked out in it, so the next call picks up the default
+     * zone again.
+     */
+    public static void onTimeZoneChanged() {
+        sZoneDays = null;
+    }
+
+    private static ZoneDays zoneDays() {
+        ZoneDays zoneDays = sZoneDays;
+        if (zoneDays == null) {
+            zoneDays = new ZoneDays(TimeZone.getDefault());
+            sZoneDays = zoneDays;
+        }
+        return zoneDays;
+    }
+
+    private static final class ZoneDays {
+        final TimeZone zone;
+        private final long[] mDays = new long[CACHE_SIZE];
+        private final long[] mStarts = new long[CACHE_SIZE];
+
+        ZoneDays(TimeZone zone) {
+            this.zone = zone;
+            Arrays.fill(mDays, Long.MIN_VALUE);
+        }
+
+        long epochDay(long millis) {
+            // Truncates like Time.getJulianDay rather than flooring, so dates before the epoch
+            // land where they always have.
+            return (millis + zone.getOffset(millis)) / DAY_IN_MILLIS;
+        }
+
+        synchronized long startOfDay(long epochDay) {
+            int slot = (int) epochDay & (CACHE_SIZE - 1);
+            if (mDays[slot] == epochDay) {
+                return mStarts[slot];
+            }
+            long start = computeStartOfDay(epochDay);
+            mDays[slot] = epochDay;
+            mStarts[slot] = start;
+            return start;
+        }
+
+        private long computeStartOfDay(long epochDay) {
+            long wallMidnight = epochDay * DAY_IN_MILLIS;
+            int offset = zone.getOffset(wallMidnight);
+            long start = wallMidnight - offset;
+            // With the same offset for two days either side, midnight happens exactly once.
+            if (zone.getOffset(start) == offset
+                    && zone.getOffset(start - TRANSITION_MARGIN_MILLIS) == offset
+                    && zone.getOffset(start + TRANSITION_MARGIN_MILLIS) == offset) {
+                return start;
+            }
+            // Near a transition midnight may be skipped or repeated; leave those to Time, so
+            // they come out as they always have.
+            Time time = new Time(zone.getID());
+            return time.setJulianDay((int) epochDay + Time.EPOCH_JULIAN_DAY);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A single schema upgrade step, taking the database from {@link #startVersion} to
+ * {@link #endVersion} without discarding the rows already in it.
+ */
+abstract class DbMigration {
+
+    private static final String LOG_TAG = DbMigration.class.getSimpleName();
+
+    final int startVersion;
+    final int endVersion;
+
+    DbMigration(int startVersion, int endVersion) {
+        this.startVersion = startVersion;
+        this.endVersion = endVersion;
+    }
+
+    /**
+     * Applies this step.  Called from within the upgrade transaction, so implementations must
+     * not begin or end transactions of their own.
+     */
+    abstract void migrate(SQLiteDatabase db);
+
+    /**
+     * How long a single step took to run, as recorded by {@link #runAll}.
+     */
+    static final class Timing {
+        final int startVersion;
+        final int endVersion;
+        final long durationMillis;
+
+        Timing(int startVersion, int endVersion, long durationMillis) {
+            this.startVersion = startVersion;
+            this.endVersion = endVersion;
+            this.durationMillis = durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return startVersion + "->" + endVersion + ": " + durationMillis + "ms";
+        }
+    }
+
+    /**
+     * Finds the ordered chain of steps leading from oldVersion to newVersion.
+     *
+     * @return the steps to run, or null if there is a gap in the chain.
+     */
+    static List<DbMigration> findPath(DbMigration[] migrations, int oldVersion, int newVersion) {
+        List<DbMigration> path = new ArrayList<DbMigration>();
+        int version = oldVersion;
+        while (version < newVersion) {
+            DbMigration next = null;
+            for (DbMigration migration : migrations) {
+                if (migration.startVersion == version) {
+                    next = migration;
+                    break;
+                }
+            }
+            if (next == null || next.endVersion > newVersion) {
+                return null;
+            }
+            path.add(next);
+            version = next.endVersion;
+        }
+        return path;
+    }
+
+    /**
+     * Runs every step in the path, recording how long each one takes.  SQLiteOpenHelper already
+     * wraps onUpgrade in a single transaction, so a step that throws rolls the whole upgrade back
+     * and leaves the database at oldVersion.
+     */
+    static List<Timing> runAll(SQLiteDatabase db, List<DbMigration> path) {
+        List<Timing> timings = new ArrayList<Timing>(path.size());
+        for (DbMigration migration : path) {
+            long start = SystemClock.elapsedRealtime();
+            migration.migrate(db);
+            Timing timing = new Timing(migration.startVersion, migration.endVersion,
+                    SystemClock.elapsedRealtime() - start);
+            Log.i(LOG_TAG, "Migrated " + timing);
+            timings.add(timing);
+        }
+        return timings;
+    }
+
+    /**
+     * Rebuilds a table from its current definition, copying over every column the old and new
+     * definitions have in common.  This is the usual way to change constraints in SQLite, which
+     * has no ALTER TABLE for anything but renames and added columns.
+     */
+    static void rebuildTable(SQLiteDatabase db, String tableName, String createSql) {
+        final String oldTableName = tableName + "_old";
+        db.execSQL("ALTER TABLE " + tableName + " RENAME TO " + oldTableName);
+        db.execSQL(createSql);
+
+        Set<String> oldColumns = getColumnNames(db, oldTableName);
+        List<String> sharedColumns = new ArrayList<String>();
+        for (String column : getColumnNames(db, tableName)) {
+            if (oldColumns.contains(column)) {
+                sharedColumns.add(column);
+            }
+        }
+
+        if (!sharedColumns.isEmpty()) {
+            String columns = TextUtils.join(",", sharedColumns);
+            db.execSQL("INSERT OR REPLACE INTO " + tableName + " (" + columns + ") SELECT " +
+                    columns + " FROM " + oldTableName);
+        }
+        db.execSQL("DROP TABLE " + oldTableName);
+    }
+
+    static Set<String> getColumnNames(SQLiteDatabase db, String tableName) {
+        Set<String> columns = new HashSet<String>();
+        Cursor c = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        try {
+            int nameIndex = c.getColumnIndex("name");
+            while (c.moveToNext()) {
+                columns.add(c.getString(nameIndex));
+            }
+        } finally {
+            c.close();
+        }
+        return columns;
+    }
+}
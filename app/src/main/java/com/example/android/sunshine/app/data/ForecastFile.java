@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The preferred location's forecast as a fixed-layout file, written by the sync right after it
+ * stores the forecast and read through a memory mapping by the widgets, Muzei and the wear
+ * service.  Reading it costs no IPC and no SQLite, so those readers try it first and query the
+ * provider only when {@link #read} returns null.
+ *
+ * The header holds a sequence number that is odd while a write is in progress, and a checksum
+ * of everything after it.  A reader that sees an odd number, a different number after reading,
+ * or a checksum that doesn't match retries a few times and then gives up.
+ */
+public final class ForecastFile {
+    private static final String LOG_TAG = ForecastFile.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast.snapshot";
+
+    // The sync fetches 14 days.
+    static final int MAX_DAYS = 16;
+    static final int MAX_LOCATION_BYTES = 96;
+    static final int MAX_DESCRIPTION_BYTES = 64;
+
+    private static final int MAGIC = 0x534e4643;  // "SNFC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Header layout.  Everything from OFFSET_LOCATION_LENGTH to the end of the last day is
+    // covered by the checksum.
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    static final int OFFSET_SEQUENCE = 8;
+    private static final int OFFSET_CHECKSUM = 12;
+    private static final int OFFSET_LOCATION_LENGTH = 16;
+    private static final int OFFSET_LOCATION = 18;
+    private static final int OFFSET_DAY_COUNT = OFFSET_LOCATION + MAX_LOCATION_BYTES;
+    static final int HEADER_SIZE = OFFSET_DAY_COUNT + 4;
+
+    // Day layout, relative to the start of the day.
+    private static final int DAY_DATE = 0;
+    private static final int DAY_WEATHER_ID = 8;
+    private static final int DAY_HIGH = 12;
+    private static final int DAY_LOW = 20;
+    private static final int DAY_HUMIDITY = 28;
+    private static final int DAY_PRESSURE = 36;
+    private static final int DAY_WIND = 44;
+    private static final int DAY_DEGREES = 52;
+    private static final int DAY_DESCRIPTION_LENGTH = 60;
+    private static final int DAY_DESCRIPTION = 62;
+    private static final int DAY_SIZE = DAY_DESCRIPTION + MAX_DESCRIPTION_BYTES;
+
+    static final int FILE_SIZE = HEADER_SIZE + MAX_DAYS * DAY_SIZE;
+
+    /**
+     * One day of the forecast, with the same raw values the provider stores.
+     */
+    public static final class Day {
+        public final long date;
+        public final int weatherId;
+        public final double high;
+        public final double low;
+        public final double humidity;
+        public final double pressure;
+        public final double wind;
+        public final double degrees;
+        public final String description;
+
+        Day(long date, int weatherId, double high, double low, double humidity, double pressure,
+            double wind, double degrees, String description) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.high = high;
+            this.low = low;
+            this.humidity = humidity;
+            this.pressure = pressure;
+            this.wind = wind;
+            this.degrees = degrees;
+            this.description = description;
+        }
+    }
+
+    private static ForecastFile sInstance;
+
+    private final File mFile;
+    private volatile MappedByteBuffer mBuffer;
+
+    public static synchronized ForecastFile getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastFile(
+                    new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    ForecastFile(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Replaces the file's contents with a location's forecast.  Dates are normalized the way the
+     * provider normalizes them.  If the forecast doesn't fit the layout the file is left
+     * readable by nobody, so readers fall back to the provider rather than see stale days.
+     *
+     * @param days the rows the sync just inserted, in date order
+     */
+    public synchronized void write(String locationSetting, ContentValues[] days) {
+        MappedByteBuffer buffer = map(true);
+        if (buffer == null) return;
+
+        int sequence = beginWrite(buffer);
+        byte[] location = locationSetting.getBytes(UTF_8);
+        int count = Math.min(days.length, MAX_DAYS);
+        boolean fits = location.length <= MAX_LOCATION_BYTES;
+        if (fits) {
+            buffer.putShort(OFFSET_LOCATION_LENGTH, (short) location.length);
+            putBytes(buffer, OFFSET_LOCATION, location);
+            for (int i = 0; i < count && fits; i++) {
+                fits = putDay(buffer, HEADER_SIZE + i * DAY_SIZE, days[i]);
+            }
+        }
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, FORMAT_VERSION);
+        // No days means no reader can use the file.
+        endWrite(buffer, sequence, fits ? count : 0);
+        if (!fits) {
+            Log.w(LOG_TAG, "Forecast for " + locationSetting + " doesn't fit the snapshot file");
+        }
+    }
+
+    /**
+     * Empties the file if it holds the given location's forecast, or any forecast if
+     * locationSetting is null.  The provider calls this for every weather write, so readers
+     * fall back to it rather than see days it no longer has; the sync then writes the file
+     * again once its own writes are done.
+     */
+    synchronized void invalidate(String locationSetting) {
+        MappedByteBuffer buffer = map(false);
+        if (buffer == null || buffer.getInt(OFFSET_DAY_COUNT) == 0) return;
+        if (locationSetting != null
+                && !locationMatches(buffer, locationSetting.getBytes(UTF_8))) {
+            return;
+        }
+        endWrite(buffer, beginWrite(buffer), 0);
+    }
+
+    // Makes the sequence number odd, whatever state a crashed write left it in.
+    private static int beginWrite(MappedByteBuffer buffer) {
+        int sequence = buffer.getInt(OFFSET_SEQUENCE) | 1;
+        buffer.putInt(OFFSET_SEQUENCE, sequence);
+        return sequence;
+    }
+
+    // Readers check the checksum, so there's no need to force the pages out to disk: a file a
+    // crash left half written is rejected like a torn read.
+    private static void endWrite(MappedByteBuffer buffer, int sequence, int count) {
+        buffer.putInt(OFFSET_DAY_COUNT, count);
+        buffer.putInt(OFFSET_CHECKSUM, checksum(buffer, count));
+        buffer.putInt(OFFSET_SEQUENCE, sequence + 1);
+    }
+
+    private static boolean putDay(MappedByteBuffer buffer, int offset, ContentValues values) {
+        byte[] description = values.getAsString(WeatherEntry.COLUMN_SHORT_DESC).getBytes(UTF_8);
+        if (description.length > MAX_DESCRIPTION_BYTES) return false;
+        buffer.putLong(offset + DAY_DATE,
+                WeatherContract.normalizeDate(values.getAsLong(WeatherEntry.COLUMN_DATE)));
+        buffer.putInt(offset + DAY_WEATHER_ID, values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        buffer.putDouble(offset + DAY_HIGH, values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+        buffer.putDouble(offset + DAY_LOW, values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+        buffer.putDouble(offset + DAY_HUMIDITY, values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY));
+        buffer.putDouble(offset + DAY_PRESSURE, values.getAsDouble(WeatherEntry.COLUMN_PRESSURE));
+        buffer.putDouble(offset + DAY_WIND, values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED));
+        buffer.putDouble(offset + DAY_DEGREES, values.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        buffer.putShort(offset + DAY_DESCRIPTION_LENGTH, (short) description.length);
+        putBytes(buffer, offset + DAY_DESCRIPTION, description);
+        return true;
+    }
+
+    /**
+     * Reads a location's forecast from today on, the same days a
+     * {@link WeatherEntry#buildWeatherLocationWithStartDate} query for now would return.
+     *
+     * @return the days, or null if the file can't answer: it is missing, was written for
+     * another location, has no days from today on, or was being written or damaged.
+     */
+    public List<Day> read(String locationSetting, long now) {
+        return read(locationSetting, now, MAX_DAYS);
+    }
+
+    /**
+     * @return today's forecast, or null under the same conditions as {@link #read}.
+     */
+    public Day readToday(String locationSetting, long now) {
+        List<Day> days = read(locationSetting, now, 1);
+        return days == null ? null : days.get(0);
+    }
+
+    private List<Day> read(String locationSetting, long now, int maxDays) {
+        MappedByteBuffer buffer = map(false);
+        if (buffer == null) return null;
+        byte[] location = locationSetting.getBytes(UTF_8);
+        long today = WeatherContract.normalizeDate(now);
+
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            int sequence = buffer.getInt(OFFSET_SEQUENCE);
+            if ((sequence & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            if (buffer.getInt(OFFSET_MAGIC) != MAGIC
+                    || buffer.getInt(OFFSET_VERSION) != FORMAT_VERSION
+                    || !locationMatches(buffer, location)) {
+                // Only a write can change these, so there's no point retrying unless one did.
+                if (buffer.getInt(OFFSET_SEQUENCE) == sequence) return null;
+                continue;
+            }
+            int count = buffer.getInt(OFFSET_DAY_COUNT);
+            if (count < 0 || count > MAX_DAYS) continue;
+            List<Day> days = new ArrayList<Day>(Math.min(count, maxDays));
+            for (int i = 0; i < count && days.size() < maxDays; i++) {
+                int offset = HEADER_SIZE + i * DAY_SIZE;
+                if (buffer.getLong(offset + DAY_DATE) < today) continue;
+                Day day = getDay(buffer, offset);
+                if (day == null) break;
+                days.add(day);
+            }
+            if (checksum(buffer, count) != buffer.getInt(OFFSET_CHECKSUM)
+                    || buffer.getInt(OFFSET_SEQUENCE) != sequence) {
+                continue;
+            }
+            return days.isEmpty() ? null : days;
+        }
+        return null;
+    }
+
+    private static boolean locationMatches(MappedByteBuffer buffer, byte[] location) {
+        if (buffer.getShort(OFFSET_LOCATION_LENGTH) != location.length) return false;
+        for (int i = 0; i < location.length; i++) {
+            if (buffer.get(OFFSET_LOCATION + i) != location[i]) return false;
+        }
+        return true;
+    }
+
+    private static Day getDay(MappedByteBuffer buffer, int offset) {
+        int descriptionLength = buffer.getShort(offset + DAY_DESCRIPTION_LENGTH);
+        // Only possible in a torn read, which the checksum will reject.
+        if (descriptionLength < 0 || descriptionLength > MAX_DESCRIPTION_BYTES) return null;
+        byte[] description = new byte[descriptionLength];
+        for (int i = 0; i < descriptionLength; i++) {
+            description[i] = buffer.get(offset + DAY_DESCRIPTION + i);
+        }
+        return new Day(buffer.getLong(offset + DAY_DATE),
+                buffer.getInt(offset + DAY_WEATHER_ID),
+                buffer.getDouble(offset + DAY_HIGH),
+                buffer.getDouble(offset + DAY_LOW),
+                buffer.getDouble(offset + DAY_HUMIDITY),
+                buffer.getDouble(offset + DAY_PRESSURE),
+                buffer.getDouble(offset + DAY_WIND),
+                buffer.getDouble(offset + DAY_DEGREES),
+                new String(description, UTF_8));
+    }
+
+    private static void putBytes(MappedByteBuffer buffer, int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + i, bytes[i]);
+        }
+    }
+
+    // FNV-1a over the location, the day count and the days in use.
+    private static int checksum(MappedByteBuffer buffer, int count) {
+        int end = HEADER_SIZE + Math.max(0, Math.min(count, MAX_DAYS)) * DAY_SIZE;
+        int hash = 0x811c9dc5;
+        for (int i = OFFSET_LOCATION_LENGTH; i < end; i++) {
+            hash ^= buffer.get(i) & 0xff;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * Maps the file, creating it at its fixed size if create is set.  The file is never
+     * resized or replaced, so one mapping stays valid for the life of the process.
+     */
+    private MappedByteBuffer map(boolean create) {
+        MappedByteBuffer buffer = mBuffer;
+        if (buffer != null) return buffer;
+        synchronized (this) {
+            if (mBuffer != null) return mBuffer;
+            if (!create && mFile.length() != FILE_SIZE) return null;
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(mFile, "rw");
+                if (file.length() != FILE_SIZE) {
+                    file.setLength(FILE_SIZE);
+                }
+                buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+                buffer.order(ByteOrder.nativeOrder());
+                mBuffer = buffer;
+                return buffer;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Couldn't map " + mFile, e);
+                return null;
+            } finally {
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException e) {
+                        // The mapping outlives the file; nothing to do.
+                    }
+                }
+            }
+        }
+    }
+}
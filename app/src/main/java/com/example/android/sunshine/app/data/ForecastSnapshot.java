@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Locale;
+
+/**
+ * The whole forecast for one location, held as one primitive array per column.  A location never
+ * has more than a couple of weeks of rows, so this is a few hundred bytes that every reader can
+ * share without cursor windows, boxing or column name lookups.
+ *
+ * Snapshots are immutable once built.  {@link #newCursor} adapts one to the same columns the
+ * provider's weather/location join returns, so existing loaders can't tell the difference.
+ */
+final class ForecastSnapshot {
+
+    // Column ids, also the index into COLUMN_NAMES.
+    static final int COL_ID = 0;
+    static final int COL_LOC_KEY = 1;
+    static final int COL_DATE = 2;
+    static final int COL_SHORT_DESC = 3;
+    static final int COL_WEATHER_ID = 4;
+    static final int COL_MIN_TEMP = 5;
+    static final int COL_MAX_TEMP = 6;
+    static final int COL_HUMIDITY = 7;
+    static final int COL_PRESSURE = 8;
+    static final int COL_WIND_SPEED = 9;
+    static final int COL_DEGREES = 10;
+    static final int COL_LOCATION_SETTING = 11;
+    static final int COL_CITY_NAME = 12;
+    static final int COL_COORD_LAT = 13;
+    static final int COL_COORD_LONG = 14;
+
+    private static final String[] COLUMN_NAMES = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // What load() asks SQLite for, in COL_* order.  The weather _id has to be qualified because
+    // both tables in the join have one.
+    private static final String[] LOAD_PROJECTION = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String SORT_DATE_ASC = WeatherEntry.COLUMN_DATE + " ASC";
+
+    // A forecast is a couple of weeks of rows.  Past this, only the oldest MAX_ROWS are kept,
+    // which is still enough to serve the first pages of a paged query.
+    static final int MAX_ROWS = 256;
+
+    final String locationSetting;
+    final String cityName;
+    final double coordLat;
+    final double coordLong;
+    final long locationId;
+
+    // False if the location has rows after the last one held here.
+    final boolean complete;
+    final int count;
+    final long[] id;
+    final long[] date;
+    final String[] shortDesc;
+    final short[] weatherId;
+    final float[] low;
+    final float[] high;
+    final float[] humidity;
+    final float[] pressure;
+    final float[] wind;
+    final float[] degrees;
+
+    private ForecastSnapshot(String locationSetting, String cityName, double coordLat,
+                             double coordLong, long locationId, int count,
+                             boolean complete) {
+        this.locationSetting = locationSetting;
+        this.cityName = cityName;
+        this.coordLat = coordLat;
+        this.coordLong = coordLong;
+        this.locationId = locationId;
+        this.count = count;
+        this.complete = complete;
+        id = new long[count];
+        date = new long[count];
+        shortDesc = new String[count];
+        weatherId = new short[count];
+        low = new float[count];
+        high = new float[count];
+        humidity = new float[count];
+        pressure = new float[count];
+        wind = new float[count];
+        degrees = new float[count];
+    }
+
+    /**
+     * Reads the location's weather rows, oldest first, up to {@link #MAX_ROWS}.  A location with
+     * no rows (or no location row at all) gives an empty snapshot, which is just as cacheable.
+     */
+    static ForecastSnapshot load(SQLiteDatabase db, SQLiteQueryBuilder weatherByLocation,
+                                 String locationSetting) {
+        Cursor cursor = weatherByLocation.query(db,
+                LOAD_PROJECTION,
+                LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? ",
+                new String[]{locationSetting},
+                null,
+                null,
+                SORT_DATE_ASC,
+                Integer.toString(MAX_ROWS + 1));
+        try {
+            boolean complete = cursor.getCount() <= MAX_ROWS;
+            int count = Math.min(cursor.getCount(), MAX_ROWS);
+            if (!cursor.moveToFirst()) {
+                return new ForecastSnapshot(locationSetting, null, 0, 0, -1, 0, true);
+            }
+            ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting,
+                    cursor.getString(COL_CITY_NAME),
+                    cursor.getDouble(COL_COORD_LAT),
+                    cursor.getDouble(COL_COORD_LONG),
+                    cursor.getLong(COL_LOC_KEY),
+                    count,
+                    complete);
+            for (int i = 0; i < count; i++, cursor.moveToNext()) {
+                snapshot.id[i] = cursor.getLong(COL_ID);
+                snapshot.date[i] = cursor.getLong(COL_DATE);
+                snapshot.shortDesc[i] = cursor.getString(COL_SHORT_DESC);
+                snapshot.weatherId[i] = (short) cursor.getInt(COL_WEATHER_ID);
+                snapshot.low[i] = cursor.getFloat(COL_MIN_TEMP);
+                snapshot.high[i] = cursor.getFloat(COL_MAX_TEMP);
+                snapshot.humidity[i] = cursor.getFloat(COL_HUMIDITY);
+                snapshot.pressure[i] = cursor.getFloat(COL_PRESSURE);
+                snapshot.wind[i] = cursor.getFloat(COL_WIND_SPEED);
+                snapshot.degrees[i] = cursor.getFloat(COL_DEGREES);
+            }
+            return snapshot;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the index of the first row dated on or after the given date, or count if none is.
+     */
+    int indexOfDate(long fromDate) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (date[mid] < fromDate) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Maps a query projection onto COL_* ids, accepting the "weather._id" style the loaders use.
+     *
+     * @return the column ids, or null if the projection asks for anything a snapshot can't serve.
+     */
+    static int[] resolveProjection(String[] projection) {
+        // A null projection would return both tables' _id columns, which we don't keep.
+        if (projection == null) return null;
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            String name = projection[i];
+            if (name.startsWith(WeatherEntry.TABLE_NAME + ".")) {
+                name = name.substring(WeatherEntry.TABLE_NAME.length() + 1);
+            } else if (name.equals(WeatherEntry._ID) || name.indexOf('.') >= 0) {
+                // An unqualified _id is ambiguous in the join, so SQLite would reject it.
+                return null;
+            }
+            columns[i] = indexOf(name);
+            if (columns[i] < 0) return null;
+        }
+        return columns;
+    }
+
+    /**
+     * @return true if rows in date order satisfy the given ORDER BY.
+     */
+    static boolean isSupportedSortOrder(String sortOrder) {
+        return sortOrder == null || SORT_DATE_ASC.equalsIgnoreCase(sortOrder.trim());
+    }
+
+    // CursorWindow turns REAL values into strings with printf's "%g", which is not what
+    // Double.toString does.  Match it so a snapshot reads back the same strings as the
+    // SQLite cursor it stands in for (e.g. "75" rather than "75.0").
+    static String formatReal(double value) {
+        if (Double.isNaN(value)) return "nan";
+        if (Double.isInfinite(value)) return value > 0 ? "inf" : "-inf";
+        if (value == 0) return "0";
+        BigDecimal rounded = new BigDecimal(value).round(new MathContext(6)).stripTrailingZeros();
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        if (exponent < -4 || exponent >= 6) {
+            String mantissa = rounded.movePointLeft(exponent).stripTrailingZeros().toPlainString();
+            return String.format(Locale.US, "%se%s%02d", mantissa, exponent < 0 ? "-" : "+",
+                    Math.abs(exponent));
+        }
+        return rounded.toPlainString();
+    }
+
+    private static int indexOf(String columnName) {
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            if (COLUMN_NAMES[i].equals(columnName)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param columns resolved by {@link #resolveProjection}
+     * @param fromDate the first date to include, or 0 for all of them
+     * @param singleDate true to return only the row dated exactly fromDate
+     * @param limit the most rows to return, or 0 for no limit
+     * @return the cursor, or null if the answer runs past the rows an incomplete snapshot holds.
+     */
+    Cursor newCursor(int[] columns, long fromDate, boolean singleDate, int limit) {
+        int start = indexOfDate(fromDate);
+        int end = count;
+        if (singleDate) {
+            if (start == count && !complete) return null;
+            end = (start < count && date[start] == fromDate) ? start + 1 : start;
+        } else if (limit > 0 && start + limit <= count) {
+            end = start + limit;
+        } else if (!complete) {
+            return null;
+        }
+        String[] columnNames = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnNames[i] = COLUMN_NAMES[columns[i]];
+        }
+        return new SnapshotCursor(this, columnNames, columns, start, end - start);
+    }
+
+    /**
+     * A cursor over a contiguous range of a snapshot's rows.
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+        private final ForecastSnapshot mSnapshot;
+        private final String[] mColumnNames;
+        private final int[] mColumns;
+        private final int mStart;
+        private final int mCount;
+
+        SnapshotCursor(ForecastSnapshot snapshot, String[] columnNames, int[] columns, int start,
+                       int count) {
+            mSnapshot = snapshot;
+            mColumnNames = columnNames;
+            mColumns = columns;
+            mStart = start;
+            mCount = count;
+        }
+
+        private int row() {
+            if (mPos < 0 || mPos >= mCount) {
+                throw new IndexOutOfBoundsException("Position " + mPos + " out of range");
+            }
+            return mStart + mPos;
+        }
+
+        private int column(int column) {
+            if (column < 0 || column >= mColumns.length) {
+                throw new IndexOutOfBoundsException("Requested column: " + column
+                        + ", # of columns: " + mColumns.length);
+            }
+            return mColumns[column];
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        @Override
+        public int getType(int column) {
+            switch (column(column)) {
+                case COL_SHORT_DESC:
+                case COL_LOCATION_SETTING:
+                case COL_CITY_NAME:
+                    return FIELD_TYPE_STRING;
+                case COL_ID:
+                case COL_LOC_KEY:
+                case COL_DATE:
+                case COL_WEATHER_ID:
+                    return FIELD_TYPE_INTEGER;
+                default:
+                    return FIELD_TYPE_FLOAT;
+            }
+        }
+
+        @Override
+        public String getString(int column) {
+            switch (getType(column)) {
+                case FIELD_TYPE_STRING:
+                    int row = row();
+                    switch (mColumns[column]) {
+                        case COL_SHORT_DESC:
+                            return mSnapshot.shortDesc[row];
+                        case COL_LOCATION_SETTING:
+                            return mSnapshot.locationSetting;
+                        default:
+                            return mSnapshot.cityName;
+                    }
+                case FIELD_TYPE_INTEGER:
+                    return Long.toString(getLong(column));
+                default:
+                    return formatReal(getDouble(column));
+            }
+        }
+
+        @Override
+        public long getLong(int column) {
+            int row = row();
+            switch (column(column)) {
+                case COL_ID:
+                    return mSnapshot.id[row];
+                case COL_LOC_KEY:
+                    return mSnapshot.locationId;
+                case COL_DATE:
+                    return mSnapshot.date[row];
+                case COL_WEATHER_ID:
+                    return mSnapshot.weatherId[row];
+                case COL_SHORT_DESC:
+                case COL_LOCATION_SETTING:
+                case COL_CITY_NAME:
+                    return Long.parseLong(getString(column));
+                default:
+                    return (long) getDouble(column);
+            }
+        }
+
+        @Override
+        public double getDouble(int column) {
+            int row = row();
+            switch (column(column)) {
+                case COL_MIN_TEMP:
+                    return mSnapshot.low[row];
+                case COL_MAX_TEMP:
+                    return mSnapshot.high[row];
+                case COL_HUMIDITY:
+                    return mSnapshot.humidity[row];
+                case COL_PRESSURE:
+                    return mSnapshot.pressure[row];
+                case COL_WIND_SPEED:
+                    return mSnapshot.wind[row];
+                case COL_DEGREES:
+                    return mSnapshot.degrees[row];
+                case COL_COORD_LAT:
+                    return mSnapshot.coordLat;
+                case COL_COORD_LONG:
+                    return mSnapshot.coordLong;
+                case COL_SHORT_DESC:
+                case COL_LOCATION_SETTING:
+                case COL_CITY_NAME:
+                    return Double.parseDouble(getString(column));
+                default:
+                    return getLong(column);
+            }
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            // Every column is NOT NULL in the schema.
+            column(column);
+            row();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the current {@link ForecastSnapshot} per location.  Readers never lock: the map is
+ * replaced wholesale on every change, so a reader sees either the old snapshot or the new one.
+ *
+ * Writes only drop snapshots.  The first query after a sync loads the new one, so each sync
+ * costs one load per location that is actually read.  Hit and miss counts are kept so the
+ * provider can report how often queries are answered without SQLite.
+ */
+final class ForecastSnapshotStore {
+
+    // Never more than a handful of locations are read, but don't let a caller cycling through
+    // location strings grow this without bound.
+    private static final int MAX_LOCATIONS = 8;
+
+    private volatile Map<String, ForecastSnapshot> mSnapshots = Collections.emptyMap();
+
+    // Bumped by every invalidation, so a load that raced a write is not published.
+    private long mGeneration;
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    ForecastSnapshot get(String locationSetting) {
+        ForecastSnapshot snapshot = mSnapshots.get(locationSetting);
+        (snapshot != null ? mHits : mMisses).incrementAndGet();
+        return snapshot;
+    }
+
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    synchronized void publish(ForecastSnapshot snapshot, long generation) {
+        if (generation != mGeneration) return;
+        Map<String, ForecastSnapshot> snapshots = mSnapshots.size() >= MAX_LOCATIONS
+                ? new HashMap<String, ForecastSnapshot>()
+                : new HashMap<String, ForecastSnapshot>(mSnapshots);
+        snapshots.put(snapshot.locationSetting, snapshot);
+        mSnapshots = Collections.unmodifiableMap(snapshots);
+    }
+
+    synchronized void invalidate(String locationSetting) {
+        mGeneration++;
+        if (!mSnapshots.containsKey(locationSetting)) return;
+        Map<String, ForecastSnapshot> snapshots = new HashMap<String, ForecastSnapshot>(mSnapshots);
+        snapshots.remove(locationSetting);
+        mSnapshots = Collections.unmodifiableMap(snapshots);
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mSnapshots = Collections.emptyMap();
+    }
+}
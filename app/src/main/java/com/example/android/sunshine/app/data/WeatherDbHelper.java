@@ -15,84 +15,241 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 3;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Create a table to hold locations.  A location consists of the string supplied in the
+    // location setting, the city name, and the latitude and longitude
+    static final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry._ID + " INTEGER PRIMARY KEY," +
+            LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+            LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+            " );";
+
+    static final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+            // Why AutoIncrement here, and not above?
+            // Unique keys will be auto-generated in either case.  But for weather
+            // forecasting, it's reasonable to assume the user will want information
+            // for a certain date and all dates *following*, so the forecast data
+            // should be sorted accordingly.
+            WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+
+            // the ID of the location entry associated with this weather data
+            WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+            WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+            WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+            // Set up the location column as a foreign key to location table.
+            " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            // To assure the application have just one weather entry per day
+            // per location, it's created a UNIQUE constraint with REPLACE strategy
+            " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+
+    // One row per location per month of past days, packed by WeatherHistoryCodec.  The UNIQUE
+    // constraint doubles as the index range queries scan by location and month.
+    static final String SQL_CREATE_HISTORY_TABLE = "CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+            HistoryEntry._ID + " INTEGER PRIMARY KEY," +
+            HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_MONTH + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_DAYS + " BLOB NOT NULL, " +
+            HistoryEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+
+            " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            " UNIQUE (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+            HistoryEntry.COLUMN_MONTH + ") ON CONFLICT REPLACE);";
+
+    // Ordered upgrade steps.  When you bump DATABASE_VERSION, add a step ending at the new
+    // version here and a matching fixture in TestDbMigrations; never edit a step that shipped.
+    // Each step spells out the tables it creates as they were at its version, rather than
+    // using the SQL_CREATE constants above, which follow the current schema.
+    static final DbMigration[] MIGRATIONS = {
+            // Rebuilding both tables brings whatever version 1 definition is on disk up to the
+            // version 2 one, constraints included, while keeping every column the two share.
+            // The location table has to go first: renaming it rewrites the foreign key in the
+            // weather table, which the weather rebuild then puts back.
+            new DbMigration(1, 2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    final String SQL_CREATE_LOCATION_TABLE_V2 = "CREATE TABLE location (" +
+                            "_id INTEGER PRIMARY KEY," +
+                            "location_setting TEXT UNIQUE NOT NULL, " +
+                            "city_name TEXT NOT NULL, " +
+                            "coord_lat REAL NOT NULL, " +
+                            "coord_long REAL NOT NULL " +
+                            " );";
+                    final String SQL_CREATE_WEATHER_TABLE_V2 = "CREATE TABLE weather (" +
+                            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "location_id INTEGER NOT NULL, " +
+                            "date INTEGER NOT NULL, " +
+                            "short_desc TEXT NOT NULL, " +
+                            "weather_id INTEGER NOT NULL," +
+                            "min REAL NOT NULL, " +
+                            "max REAL NOT NULL, " +
+                            "humidity REAL NOT NULL, " +
+                            "pressure REAL NOT NULL, " +
+                            "wind REAL NOT NULL, " +
+                            "degrees REAL NOT NULL, " +
+                            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+                    rebuildTable(db, "location", SQL_CREATE_LOCATION_TABLE_V2);
+                    rebuildTable(db, "weather", SQL_CREATE_WEATHER_TABLE_V2);
+                }
+            },
+            // Adds the history table the sync archives past days into.
+            new DbMigration(2, 3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    final String SQL_CREATE_HISTORY_TABLE_V3 = "CREATE TABLE weather_history (" +
+                            "_id INTEGER PRIMARY KEY," +
+                            "location_id INTEGER NOT NULL, " +
+                            "month INTEGER NOT NULL, " +
+                            "days BLOB NOT NULL, " +
+                            "day_count INTEGER NOT NULL, " +
+                            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                            " UNIQUE (location_id, month) ON CONFLICT REPLACE);";
+                    db.execSQL(SQL_CREATE_HISTORY_TABLE_V3);
+                }
+            }
+    };
+
+    private List<DbMigration.Timing> mLastUpgradeTimings = Collections.emptyList();
+
+    // The whole database is a few hundred rows, so a 1MB page cache (at the default 4K pages)
+    // keeps all of it in memory on the primary connection.
+    private static final int CACHE_SIZE_PAGES = 256;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Write-ahead logging lets the loaders keep reading while the sync adapter's bulkInsert
+        // holds the write lock, instead of queueing behind it.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
     }
 
     @Override
-    public void onCreate(SQLiteDatabase sqLiteDatabase) {
-        // Create a table to hold locations.  A location consists of the string supplied in the
-        // location setting, the city name, and the latitude and longitude
-        final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
-                LocationEntry._ID + " INTEGER PRIMARY KEY," +
-                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
-                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
-                " );";
-
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-
-                // the ID of the location entry associated with this weather data
-                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
-                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
-
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
-
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
-
-                // Set up the location column as a foreign key to location table.
-                " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
-                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
-
-                // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+    @TargetApi(16)
+    public void onConfigure(SQLiteDatabase db) {
+        // Only called on Jelly Bean and up, before onCreate/onUpgrade.  Older devices pick the
+        // same settings up from onOpen.
+        configure(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            configure(db);
+            db.enableWriteAheadLogging();
+        }
+    }
+
+    private static void configure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA cache_size = " + CACHE_SIZE_PAGES);
+        // With WAL, NORMAL only syncs at checkpoints and still can't corrupt the database.  The
+        // worst a power loss can do is drop the last sync, which the next sync fetches again.
+        db.execSQL("PRAGMA synchronous = NORMAL");
+    }
 
+    @Override
+    public void onCreate(SQLiteDatabase sqLiteDatabase) {
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        // Every schema bump used to drop both tables, which wiped the cache and left the UI blank
+        // until the next sync finished.  Walk the ordered migration steps instead so the rows
+        // survive.  SQLiteOpenHelper runs this inside one transaction, so a failing step rolls
+        // everything back.
+        List<DbMigration> path = DbMigration.findPath(MIGRATIONS, oldVersion, newVersion);
+        if (path != null) {
+            try {
+                mLastUpgradeTimings = DbMigration.runAll(sqLiteDatabase, path);
+                return;
+            } catch (SQLiteException e) {
+                // Rows an old version let in that the new constraints reject, say.  Rolling back
+                // would only fail the same way on every open, so start over instead.
+                Log.e(LOG_TAG, "Migration from version " + oldVersion + " to " + newVersion +
+                        " failed, recreating database", e);
+            }
+        } else {
+            // No migration path (e.g. a database from a build that was never released).
+            Log.w(LOG_TAG, "No migration from version " + oldVersion + " to " + newVersion +
+                    ", recreating database");
+        }
+
+        // The data is only a cache for online data, so fall back to discarding it.  A failed
+        // step may have left renamed or half built tables behind, so drop whatever is there.
+        dropAllTables(sqLiteDatabase);
         onCreate(sqLiteDatabase);
     }
+
+    private static void dropAllTables(SQLiteDatabase db) {
+        List<String> tables = new ArrayList<String>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table'" +
+                " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        try {
+            while (cursor.moveToNext()) {
+                tables.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String table : tables) {
+            db.execSQL("DROP TABLE IF EXISTS " + table);
+        }
+    }
+
+    /**
+     * @return how long each step of the last upgrade took, or an empty list if this helper did
+     * not upgrade the database.
+     */
+    List<DbMigration.Timing> getLastUpgradeTimings() {
+        return mLastUpgradeTimings;
+    }
 }
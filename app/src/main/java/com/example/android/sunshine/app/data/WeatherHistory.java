@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves past days from the weather table into the history table, and reads them back.
+ */
+final class WeatherHistory {
+
+    private static final String LOG_TAG = WeatherHistory.class.getSimpleName();
+
+    // Five years.  A month of one location's history is a few hundred bytes, so this is about
+    // twenty kilobytes per location.
+    static final int RETENTION_MONTHS = 60;
+
+    // The columns a history query returns, one row per day.
+    static final String[] DAY_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String[] ARCHIVE_PROJECTION = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String sMonthSelection =
+            HistoryEntry.COLUMN_LOC_KEY + " = ? AND " + HistoryEntry.COLUMN_MONTH + " = ?";
+
+    private static final String sMonthRangeSelection =
+            HistoryEntry.COLUMN_LOC_KEY + " = ? AND " + HistoryEntry.COLUMN_MONTH +
+                    " BETWEEN ? AND ?";
+
+    private WeatherHistory() {
+    }
+
+    /**
+     * Moves every weather row dated on or before cutoffDate into the history table, merging it
+     * into any month already there, deletes the rows, then drops months that have aged past
+     * {@link #RETENTION_MONTHS}.  The caller must hold a transaction, so a failure can't leave
+     * a day both archived and still in the weather table, or in neither.
+     *
+     * @return the number of weather rows archived.
+     */
+    static int archive(SQLiteDatabase db, long cutoffDate) {
+        String[] cutoffArgs = new String[]{Long.toString(cutoffDate)};
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                ARCHIVE_PROJECTION,
+                WeatherEntry.COLUMN_DATE + " <= ?",
+                cutoffArgs,
+                null,
+                null,
+                WeatherEntry.COLUMN_LOC_KEY + " ASC, " + WeatherEntry.COLUMN_DATE + " ASC");
+        int archived = 0;
+        try {
+            long locationId = -1;
+            int month = -1;
+            List<WeatherHistoryCodec.Day> days = new ArrayList<WeatherHistoryCodec.Day>();
+            while (cursor.moveToNext()) {
+                long rowLocationId = cursor.getLong(0);
+                long date = cursor.getLong(1);
+                int rowMonth = WeatherHistoryCodec.monthOf(date);
+                if (!days.isEmpty() && (rowLocationId != locationId || rowMonth != month)) {
+                    writeMonth(db, locationId, month, days);
+                    days = new ArrayList<WeatherHistoryCodec.Day>();
+                }
+                locationId = rowLocationId;
+                month = rowMonth;
+                days.add(new WeatherHistoryCodec.Day(date,
+                        cursor.getInt(2),
+                        cursor.getDouble(3),
+                        cursor.getDouble(4),
+                        cursor.getDouble(5),
+                        cursor.getDouble(6),
+                        cursor.getDouble(7),
+                        cursor.getDouble(8)));
+                archived++;
+            }
+            if (!days.isEmpty()) {
+                writeMonth(db, locationId, month, days);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (archived > 0) {
+            db.delete(WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DATE + " <= ?", cutoffArgs);
+        }
+        // A few dozen rows per location, so this scan costs less than another index would.
+        db.delete(HistoryEntry.TABLE_NAME, HistoryEntry.COLUMN_MONTH + " < ?",
+                new String[]{Integer.toString(
+                        WeatherHistoryCodec.monthOf(cutoffDate) - RETENTION_MONTHS)});
+        return archived;
+    }
+
+    /*
+        A month that can't be decoded, from a format this build doesn't know, is treated as empty
+        and overwritten.  Throwing would roll back the whole archive and fail it again on every
+        sync.
+     */
+    private static void writeMonth(SQLiteDatabase db, long locationId, int month,
+                                   List<WeatherHistoryCodec.Day> days) {
+        String[] monthArgs = new String[]{Long.toString(locationId), Integer.toString(month)};
+        Cursor cursor = db.query(HistoryEntry.TABLE_NAME,
+                new String[]{HistoryEntry.COLUMN_DAYS},
+                sMonthSelection,
+                monthArgs,
+                null,
+                null,
+                null);
+        try {
+            if (cursor.moveToFirst()) {
+                List<WeatherHistoryCodec.Day> existing = decodeMonth(cursor.getBlob(0));
+                if (existing != null) {
+                    days = WeatherHistoryCodec.merge(existing, days);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(HistoryEntry.COLUMN_LOC_KEY, locationId);
+        values.put(HistoryEntry.COLUMN_MONTH, month);
+        values.put(HistoryEntry.COLUMN_DAYS, WeatherHistoryCodec.encode(days));
+        values.put(HistoryEntry.COLUMN_DAY_COUNT, days.size());
+        db.insertWithOnConflict(HistoryEntry.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Reads a location's archived days between two dates, inclusive, oldest first.  Only the
+     * months that overlap the range are read, using the (location, month) index.
+     *
+     * @param projection a subset of {@link #DAY_COLUMNS}, or null for all of them
+     * @throws IllegalArgumentException if the projection names any other column.
+     */
+    static Cursor query(SQLiteDatabase db, long locationId, long startDate, long endDate,
+                        String[] projection) {
+        String[] columnNames = projection == null ? DAY_COLUMNS : projection;
+        int[] columns = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            columns[i] = indexOf(columnNames[i]);
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Unknown history column: " + columnNames[i]);
+            }
+        }
+
+        MatrixCursor result = new MatrixCursor(columnNames);
+        if (locationId < 0 || startDate > endDate) return result;
+
+        int startMonth = startDate == Long.MIN_VALUE
+                ? Integer.MIN_VALUE : WeatherHistoryCodec.monthOf(startDate);
+        int endMonth = endDate == Long.MAX_VALUE
+                ? Integer.MAX_VALUE : WeatherHistoryCodec.monthOf(endDate);
+        Cursor cursor = db.query(HistoryEntry.TABLE_NAME,
+                new String[]{HistoryEntry.COLUMN_DAYS},
+                sMonthRangeSelection,
+                new String[]{Long.toString(locationId), Integer.toString(startMonth),
+                        Integer.toString(endMonth)},
+                null,
+                null,
+                HistoryEntry.COLUMN_MONTH + " ASC");
+        try {
+            Object[] row = new Object[columns.length];
+            while (cursor.moveToNext()) {
+                List<WeatherHistoryCodec.Day> days = decodeMonth(cursor.getBlob(0));
+                if (days == null) continue;
+                for (WeatherHistoryCodec.Day day : days) {
+                    if (day.date < startDate || day.date > endDate) continue;
+                    for (int i = 0; i < columns.length; i++) {
+                        row[i] = valueOf(day, columns[i]);
+                    }
+                    result.addRow(row);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * @return the month's days, or null if the blob can't be decoded.
+     */
+    private static List<WeatherHistoryCodec.Day> decodeMonth(byte[] blob) {
+        try {
+            return WeatherHistoryCodec.decode(blob);
+        } catch (IllegalArgumentException e) {
+            Log.w(LOG_TAG, "Skipping unreadable history month", e);
+            return null;
+        }
+    }
+
+    private static int indexOf(String columnName) {
+        for (int i = 0; i < DAY_COLUMNS.length; i++) {
+            if (DAY_COLUMNS[i].equals(columnName)) return i;
+        }
+        return -1;
+    }
+
+    private static Object valueOf(WeatherHistoryCodec.Day day, int column) {
+        switch (column) {
+            case 0:
+                return day.date;
+            case 1:
+                return day.weatherId;
+            case 2:
+                return day.min;
+            case 3:
+                return day.max;
+            case 4:
+                return day.humidity;
+            case 5:
+                return day.pressure;
+            case 6:
+                return day.wind;
+            default:
+                return day.degrees;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Packs a month of one location's archived days into a blob for the history table.
+ *
+ * Each field is stored as a column of zig-zag varint deltas from the previous day, so a month of
+ * ordinary weather takes a byte or two per field per day.  Each measurement is kept as a whole
+ * number of the smallest step the API reports it in: hundredths for temperatures, pressure and
+ * wind speed, whole percents for humidity and whole degrees for wind direction.  Values the API
+ * sent round-trip exactly; anything finer is rounded to that step.  Dates are kept exactly.
+ *
+ * The archive is not a full copy of a weather row.  short_desc is not kept: it is the API's
+ * name for the condition group, which the weather id already determines, and the app shows its
+ * own description for the id in any case.
+ */
+final class WeatherHistoryCodec {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Steps per unit, for each measurement.
+    private static final double TEMPERATURE_SCALE = 100;
+    private static final double HUMIDITY_SCALE = 1;
+    private static final double PRESSURE_SCALE = 100;
+    private static final double WIND_SCALE = 100;
+    private static final double DEGREES_SCALE = 1;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * One archived day.  These are the day's last forecast, which for a past day is the
+     * closest thing we have to what the weather actually was.
+     */
+    static final class Day {
+        final long date;
+        final int weatherId;
+        final double min;
+        final double max;
+        final double humidity;
+        final double pressure;
+        final double wind;
+        final double degrees;
+
+        Day(long date, int weatherId, double min, double max, double humidity, double pressure,
+            double wind, double degrees) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.min = min;
+            this.max = max;
+            this.humidity = humidity;
+            this.pressure = pressure;
+            this.wind = wind;
+            this.degrees = degrees;
+        }
+    }
+
+    private WeatherHistoryCodec() {
+    }
+
+    /**
+     * The history row a date is archived in: months since January 1970, in UTC.  Stored dates are
+     * local midnights, so a day near a month boundary can land in the neighbouring month; that
+     * only affects where it is stored, not which range queries return it.
+     */
+    static int monthOf(long date) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(date);
+        return (calendar.get(Calendar.YEAR) - 1970) * 12 + calendar.get(Calendar.MONTH);
+    }
+
+    /**
+     * @param days sorted by date, with no date repeated
+     */
+    static byte[] encode(List<Day> days) {
+        final int count = days.size();
+        // Worst case is ten bytes per varint.
+        Writer out = new Writer(2 + 10 * (1 + count * 8));
+        out.writeVarint(FORMAT_VERSION);
+        out.writeVarint(count);
+
+        long previousDate = 0;
+        for (int i = 0; i < count; i++) {
+            long date = days.get(i).date;
+            // Consecutive days are a day apart, give or take a DST change.
+            out.writeSigned(i == 0 ? date : date - previousDate - DAY_IN_MILLIS);
+            previousDate = date;
+        }
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous = out.writeDelta(days.get(i).weatherId, previous);
+        }
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous = out.writeDelta(quantize(days.get(i).min, TEMPERATURE_SCALE), previous);
+        }
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous = out.writeDelta(quantize(days.get(i).max, TEMPERATURE_SCALE), previous);
+        }
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous = out.writeDelta(quantize(days.get(i).humidity, HUMIDITY_SCALE), previous);
+        }
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous = out.writeDelta(quantize(days.get(i).pressure, PRESSURE_SCALE), previous);
+        }
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous = out.writeDelta(quantize(days.get(i).wind, WIND_SCALE), previous);
+        }
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous = out.writeDelta(quantize(days.get(i).degrees, DEGREES_SCALE), previous);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the blob is from an unknown format version or is
+     *         truncated.
+     */
+    static List<Day> decode(byte[] blob) {
+        Reader in = new Reader(blob);
+        int version = (int) in.readVarint();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown history format " + version);
+        }
+        final int count = (int) in.readVarint();
+
+        long[] dates = new long[count];
+        for (int i = 0; i < count; i++) {
+            dates[i] = i == 0 ? in.readSigned() : dates[i - 1] + DAY_IN_MILLIS + in.readSigned();
+        }
+        long[] weatherIds = in.readDeltas(count);
+        long[] min = in.readDeltas(count);
+        long[] max = in.readDeltas(count);
+        long[] humidity = in.readDeltas(count);
+        long[] pressure = in.readDeltas(count);
+        long[] wind = in.readDeltas(count);
+        long[] degrees = in.readDeltas(count);
+
+        List<Day> days = new ArrayList<Day>(count);
+        for (int i = 0; i < count; i++) {
+            days.add(new Day(dates[i], (int) weatherIds[i],
+                    min[i] / TEMPERATURE_SCALE,
+                    max[i] / TEMPERATURE_SCALE,
+                    humidity[i] / HUMIDITY_SCALE,
+                    pressure[i] / PRESSURE_SCALE,
+                    wind[i] / WIND_SCALE,
+                    degrees[i] / DEGREES_SCALE));
+        }
+        return days;
+    }
+
+    /**
+     * Merges newly archived days into a month's existing days.  A date in both takes the new
+     * day.  Both lists must be sorted by date.
+     */
+    static List<Day> merge(List<Day> existing, List<Day> added) {
+        List<Day> merged = new ArrayList<Day>(existing.size() + added.size());
+        int i = 0;
+        int j = 0;
+        while (i < existing.size() || j < added.size()) {
+            if (j == added.size()) {
+                merged.add(existing.get(i++));
+            } else if (i == existing.size()) {
+                merged.add(added.get(j++));
+            } else {
+                long existingDate = existing.get(i).date;
+                long addedDate = added.get(j).date;
+                if (existingDate < addedDate) {
+                    merged.add(existing.get(i++));
+                } else {
+                    if (existingDate == addedDate) i++;
+                    merged.add(added.get(j++));
+                }
+            }
+        }
+        return merged;
+    }
+
+    /*
+        Dividing the whole number of steps by the scale gives back the nearest double to a value
+        written with that many decimals, which is the double the JSON parser made of it.
+     */
+    private static long quantize(double value, double scale) {
+        return Math.round(value * scale);
+    }
+
+    private static final class Writer {
+        private byte[] mBuffer;
+        private int mLength;
+
+        Writer(int capacity) {
+            mBuffer = new byte[capacity];
+        }
+
+        void writeVarint(long value) {
+            if (mLength + 10 > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2 + 10);
+            }
+            while ((value & ~0x7FL) != 0) {
+                mBuffer[mLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mLength++] = (byte) value;
+        }
+
+        void writeSigned(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        long writeDelta(long value, long previous) {
+            writeSigned(value - previous);
+            return value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBuffer, mLength);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] mBuffer;
+        private int mPosition;
+
+        Reader(byte[] buffer) {
+            mBuffer = buffer;
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                if (mPosition >= mBuffer.length || shift > 63) {
+                    throw new IllegalArgumentException("Truncated history blob");
+                }
+                byte b = mBuffer[mPosition++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+                shift += 7;
+            }
+        }
+
+        long readSigned() {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long[] readDeltas(int count) {
+            long[] values = new long[count];
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += readSigned();
+                values[i] = previous;
+            }
+            return values;
+        }
+    }
+}
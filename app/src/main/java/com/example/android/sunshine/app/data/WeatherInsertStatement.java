@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A weather row INSERT compiled once and re-bound for every row.  SQLiteDatabase.insert builds
+ * and compiles a fresh statement per call, which is most of the cost of a 14 row bulkInsert.
+ */
+final class WeatherInsertStatement {
+
+    private static final String LOG_TAG = WeatherInsertStatement.class.getSimpleName();
+
+    // Every column the sync adapter writes, in bind order.
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final Set<String> COLUMN_SET = new HashSet<String>(Arrays.asList(COLUMNS));
+
+    private static final String SQL_INSERT = "INSERT INTO " + WeatherEntry.TABLE_NAME +
+            " (" + TextUtils.join(",", COLUMNS) + ") VALUES (" +
+            TextUtils.join(",", Collections.nCopies(COLUMNS.length, "?")) + ")";
+
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mStatement;
+
+    WeatherInsertStatement(SQLiteDatabase db) {
+        mDb = db;
+        mStatement = db.compileStatement(SQL_INSERT);
+    }
+
+    /**
+     * Inserts one weather row.  Mirrors SQLiteDatabase.insert: failures are logged and reported
+     * as -1 rather than thrown.
+     *
+     * @return the row ID of the inserted row, or -1 on error.
+     */
+    synchronized long insert(ContentValues values) {
+        if (!canBind(values)) {
+            // Somebody passed a column we don't precompile for, such as an explicit _id.
+            return mDb.insert(WeatherEntry.TABLE_NAME, null, values);
+        }
+
+        mStatement.clearBindings();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            DatabaseUtils.bindObjectToProgram(mStatement, i + 1, values.get(COLUMNS[i]));
+        }
+        try {
+            return mStatement.executeInsert();
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error inserting " + values, e);
+            return -1;
+        }
+    }
+
+    synchronized void close() {
+        mStatement.close();
+    }
+
+    private static boolean canBind(ContentValues values) {
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            if (!COLUMN_SET.contains(entry.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
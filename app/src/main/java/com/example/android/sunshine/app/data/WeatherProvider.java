@@ -17,23 +17,48 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private WeatherInsertStatement mWeatherInsert;
+    private final ForecastSnapshotStore mSnapshots = new ForecastSnapshotStore();
+    // Set while applyBatch runs on this thread, so its operations publish their changes once.
+    private final ThreadLocal<ChangeSet> mPendingChanges = new ThreadLocal<ChangeSet>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int HISTORY_WITH_LOCATION = 400;
+
+    // ContentProvider.call method returning how many per-location weather queries were served
+    // from a cached ForecastSnapshot, and how many had to load one.
+    public static final String METHOD_GET_CACHE_STATS = "getCacheStats";
+    public static final String KEY_CACHE_HITS = "cacheHits";
+    public static final String KEY_CACHE_MISSES = "cacheMisses";
+
+    // ContentProvider.call method moving weather rows dated on or before arg into the history
+    // table, returning how many were moved.
+    public static final String METHOD_ARCHIVE_WEATHER = "archiveWeather";
+    public static final String KEY_ARCHIVED_ROWS = "archivedRows";
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -71,6 +96,28 @@ public class WeatherProvider extends ContentProvider {
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+
+        if (afterDate >= 0) {
+            // Dates are whole milliseconds, so "date > after" is just a later start date.  That
+            // keeps a page on the same index range scan as a plain start-date query.
+            startDate = Math.max(startDate, afterDate + 1);
+        }
+        if (limit > 0) {
+            // Keyset paging only works in date order.
+            if (!ForecastSnapshot.isSupportedSortOrder(sortOrder)) {
+                throw new IllegalArgumentException("Paged weather queries are sorted by date: "
+                        + sortOrder);
+            }
+            sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        }
+
+        Cursor snapshotCursor = querySnapshot(locationSetting, projection, sortOrder, startDate,
+                false, limit);
+        if (snapshotCursor != null) {
+            return snapshotCursor;
+        }
 
         String[] selectionArgs;
         String selection;
@@ -89,7 +136,8 @@ public class WeatherProvider extends ContentProvider {
                 selectionArgs,
                 null,
                 null,
-                sortOrder
+                sortOrder,
+                limit > 0 ? Integer.toString(limit) : null
         );
     }
 
@@ -98,6 +146,12 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
+        Cursor snapshotCursor = querySnapshot(locationSetting, projection, sortOrder, date, true,
+                0);
+        if (snapshotCursor != null) {
+            return snapshotCursor;
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
@@ -108,6 +162,29 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Serves a per-location weather query from the location's {@link ForecastSnapshot}, loading
+     * it first if this is the first read since it was last invalidated.
+     *
+     * @return the cursor, or null if the projection or sort order needs a real SQLite query, or
+     * the rows asked for run past what the snapshot holds.
+     */
+    private Cursor querySnapshot(String locationSetting, String[] projection, String sortOrder,
+                                 long date, boolean singleDate, int limit) {
+        int[] columns = ForecastSnapshot.resolveProjection(projection);
+        if (columns == null || !ForecastSnapshot.isSupportedSortOrder(sortOrder)) {
+            return null;
+        }
+        ForecastSnapshot snapshot = mSnapshots.get(locationSetting);
+        if (snapshot == null) {
+            long generation = mSnapshots.getGeneration();
+            snapshot = ForecastSnapshot.load(mOpenHelper.getReadableDatabase(),
+                    sWeatherByLocationSettingQueryBuilder, locationSetting);
+            mSnapshots.publish(snapshot, generation);
+        }
+        return snapshot.newCursor(columns, date, singleDate, limit);
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +207,7 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*", HISTORY_WITH_LOCATION);
         return matcher;
     }
 
@@ -164,6 +242,8 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HISTORY_WITH_LOCATION:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +293,11 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "history/*"
+            case HISTORY_WITH_LOCATION: {
+                retCursor = getHistoryByLocationSetting(uri, projection);
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -228,16 +313,18 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final ChangeSet changes = new ChangeSet();
         Uri returnUri;
 
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id = getWeatherInsert(db).insert(values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                addWeatherRows(db, new ContentValues[]{values}, changes);
                 break;
             }
             case LOCATION: {
@@ -246,12 +333,19 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                if (locationSetting != null) {
+                    changes.addLocation(locationSetting);
+                } else {
+                    changes.addAllLocations();
+                }
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        publishChanges(changes);
         return returnUri;
     }
 
@@ -259,24 +353,41 @@ public class WeatherProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final ChangeSet changes = new ChangeSet();
         int rowsDeleted;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
-        switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        // Find the rows the selection matches in the same transaction as the delete, so the
+        // change set can't miss a row written in between.
+        db.beginTransaction();
+        try {
+            switch (match) {
+                case WEATHER:
+                    addSelectedWeather(db, selection, selectionArgs, true, changes);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case LOCATION:
+                    addSelectedLocations(db, selection, selectionArgs, changes);
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    // History is only reachable through its location.
+                    db.delete(WeatherContract.HistoryEntry.TABLE_NAME,
+                            WeatherContract.HistoryEntry.COLUMN_LOC_KEY + " NOT IN (SELECT " +
+                                    WeatherContract.LocationEntry._ID + " FROM " +
+                                    WeatherContract.LocationEntry.TABLE_NAME + ")",
+                            null);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            publishChanges(changes);
         }
         return rowsDeleted;
     }
@@ -294,23 +405,46 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final ChangeSet changes = new ChangeSet();
         int rowsUpdated;
 
-        switch (match) {
-            case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        db.beginTransaction();
+        try {
+            switch (match) {
+                case WEATHER: {
+                    normalizeDate(values);
+                    // An update can move rows to another day, so take whole locations rather
+                    // than the dates the rows had before.
+                    addSelectedWeather(db, selection, selectionArgs, false, changes);
+                    Long newLocationId = values.getAsLong(
+                            WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                    if (newLocationId != null) {
+                        addWeatherLocation(db, newLocationId, changes);
+                    }
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    break;
+                }
+                case LOCATION: {
+                    addSelectedLocations(db, selection, selectionArgs, changes);
+                    String newLocationSetting = values.getAsString(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                    if (newLocationSetting != null) {
+                        changes.addLocation(newLocationSetting);
+                    }
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            publishChanges(changes);
         }
         return rowsUpdated;
     }
@@ -321,12 +455,15 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                // Compile the INSERT once and re-bind it per row rather than letting db.insert
+                // build and compile the same SQL for every day in the forecast.
+                WeatherInsertStatement weatherInsert = getWeatherInsert(db);
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = weatherInsert.insert(value);
                         if (_id != -1) {
                             returnCount++;
                         }
@@ -335,19 +472,250 @@ public class WeatherProvider extends ContentProvider {
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                // Only after the commit, so a concurrent query can't re-cache the old rows.
+                if (returnCount > 0) {
+                    ChangeSet changes = new ChangeSet();
+                    addWeatherRows(db, values, changes);
+                    publishChanges(changes);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Runs the batch in one transaction and sends its notifications once, after the commit,
+     * instead of once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (mPendingChanges.get() != null) {
+            return super.applyBatch(operations);
+        }
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final ChangeSet changes = new ChangeSet();
+        mPendingChanges.set(changes);
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+            mPendingChanges.remove();
+            // Even after a rollback: dropping cache entries and waking observers is harmless.
+            publishChanges(changes);
+        }
+    }
+
+    /**
+     * Drops the cached results the changes could affect and notifies their observers, or, inside
+     * applyBatch, holds them until the batch commits.
+     */
+    private void publishChanges(ChangeSet changes) {
+        ChangeSet pending = mPendingChanges.get();
+        if (pending != null) {
+            pending.addAll(changes);
+            return;
+        }
+        if (changes.isEmpty()) return;
+        changes.invalidate(mSnapshots, ForecastFile.getInstance(getContext()));
+        ContentResolver resolver = getContext().getContentResolver();
+        for (Uri uri : changes.getNotifyUris()) {
+            resolver.notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Adds the given weather rows to the change set.  The rows only carry a location ID, so this
+     * looks up each location's setting string once.
+     */
+    private static void addWeatherRows(SQLiteDatabase db, ContentValues[] values,
+                                       ChangeSet changes) {
+        Map<Long, String> locationSettings = new HashMap<Long, String>();
+        for (ContentValues value : values) {
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (locationId == null || date == null) {
+                changes.addAllWeather();
+                return;
+            }
+            if (!locationSettings.containsKey(locationId)) {
+                locationSettings.put(locationId, queryLocationSetting(db, locationId));
+            }
+            String locationSetting = locationSettings.get(locationId);
+            if (locationSetting != null) {
+                changes.addWeather(locationSetting, date);
+            } else {
+                // Nothing joins to this row yet, but the plain weather URI can still see it.
+                changes.addAllWeather();
+            }
+        }
+    }
+
+    private static void addWeatherLocation(SQLiteDatabase db, long locationId, ChangeSet changes) {
+        String locationSetting = queryLocationSetting(db, locationId);
+        if (locationSetting != null) {
+            changes.addWeatherLocation(locationSetting);
+        } else {
+            changes.addAllWeather();
+        }
+    }
+
+    /**
+     * Adds the weather rows matching an arbitrary selection, by location and date when
+     * {@code byDate} is set and by whole location otherwise.
+     */
+    private static void addSelectedWeather(SQLiteDatabase db, String selection,
+                                           String[] selectionArgs, boolean byDate,
+                                           ChangeSet changes) {
+        String[] columns = byDate
+                ? new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        WeatherContract.WeatherEntry.COLUMN_DATE}
+                : new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY};
+        Cursor cursor = db.query(true, WeatherContract.WeatherEntry.TABLE_NAME, columns,
+                selection, selectionArgs, null, null, null, null);
+        Map<Long, String> locationSettings = new HashMap<Long, String>();
+        try {
+            while (cursor.moveToNext()) {
+                long locationId = cursor.getLong(0);
+                if (!locationSettings.containsKey(locationId)) {
+                    locationSettings.put(locationId, queryLocationSetting(db, locationId));
+                }
+                String locationSetting = locationSettings.get(locationId);
+                if (locationSetting == null) {
+                    changes.addAllWeather();
+                } else if (byDate) {
+                    changes.addWeather(locationSetting, cursor.getLong(1));
+                } else {
+                    changes.addWeatherLocation(locationSetting);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void addSelectedLocations(SQLiteDatabase db, String selection,
+                                             String[] selectionArgs, ChangeSet changes) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                changes.addLocation(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long queryLocationId(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String queryLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putLong(KEY_CACHE_HITS, mSnapshots.getHitCount());
+            stats.putLong(KEY_CACHE_MISSES, mSnapshots.getMissCount());
+            return stats;
+        }
+        if (METHOD_ARCHIVE_WEATHER.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(KEY_ARCHIVED_ROWS, archiveWeather(Long.parseLong(arg)));
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private Cursor getHistoryByLocationSetting(Uri uri, String[] projection) {
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = queryLocationId(db,
+                WeatherContract.HistoryEntry.getLocationSettingFromUri(uri));
+        return WeatherHistory.query(db, locationId,
+                WeatherContract.HistoryEntry.getStartDateFromUri(uri),
+                WeatherContract.HistoryEntry.getEndDateFromUri(uri),
+                projection);
+    }
+
+    /**
+     * Archives and deletes the weather rows dated on or before cutoffDate in one transaction, so
+     * a day is never in both tables or in neither.
+     */
+    private int archiveWeather(long cutoffDate) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final ChangeSet changes = new ChangeSet();
+        int archived;
+        db.beginTransaction();
+        try {
+            addSelectedWeather(db, WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                    new String[]{Long.toString(cutoffDate)}, true, changes);
+            archived = WeatherHistory.archive(db, cutoffDate);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (archived > 0) {
+            publishChanges(changes);
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.HistoryEntry.CONTENT_URI, null);
+        }
+        return archived;
+    }
+
+    private synchronized WeatherInsertStatement getWeatherInsert(SQLiteDatabase db) {
+        if (mWeatherInsert == null) {
+            mWeatherInsert = new WeatherInsertStatement(db);
+        }
+        return mWeatherInsert;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
     @Override
     @TargetApi(11)
     public void shutdown() {
+        synchronized (this) {
+            if (mWeatherInsert != null) {
+                mWeatherInsert.close();
+                mWeatherInsert = null;
+            }
+        }
         mOpenHelper.close();
         super.shutdown();
     }
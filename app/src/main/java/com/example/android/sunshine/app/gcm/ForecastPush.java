@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.DayNormalizer;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.widget.WidgetUpdateDispatcher;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Brings the stored forecast up to date from a push message, so a change on the server reaches
+ * the user without waiting for the next periodic sync.
+ *
+ * A message may carry the days that changed for a location:
+ * <pre>
+ * {"location": "94043", "days": [
+ *     {"day": 0, "id": 211, "main": "Storm", "max": 21.5, "min": 14.2,
+ *      "humidity": 90, "pressure": 1002.1, "speed": 9.3, "deg": 240}]}
+ * </pre>
+ * where "day" counts from today, as a sync's days do, and the other keys are the ones the
+ * forecast API uses.  They are written to the provider in one transaction.  A message without
+ * days, or whose days can't be applied, asks for a sync instead, if it is about the location
+ * the user follows and no sync is already on its way.
+ */
+final class ForecastPush {
+    private static final String LOG_TAG = ForecastPush.class.getSimpleName();
+
+    static final String KEY_LOCATION = "location";
+    static final String KEY_DAYS = "days";
+
+    static final String KEY_DAY = "day";
+    static final String KEY_WEATHER_ID = "id";
+    static final String KEY_DESCRIPTION = "main";
+    static final String KEY_MAX = "max";
+    static final String KEY_MIN = "min";
+    static final String KEY_HUMIDITY = "humidity";
+    static final String KEY_PRESSURE = "pressure";
+    static final String KEY_WIND_SPEED = "speed";
+    static final String KEY_WIND_DIRECTION = "deg";
+
+    /** What a message led to. */
+    static final int IGNORED = 0;
+    static final int APPLIED = 1;
+    static final int SYNC_REQUESTED = 2;
+    static final int SYNC_ALREADY_RUNNING = 3;
+    static final int SYNC_FAILED = 4;
+
+    private final Context mContext;
+
+    ForecastPush(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @return {@link #APPLIED}, {@link #SYNC_REQUESTED}, {@link #SYNC_ALREADY_RUNNING},
+     * {@link #SYNC_FAILED} or {@link #IGNORED}
+     */
+    int handle(JSONObject message) {
+        String location = message.optString(KEY_LOCATION, null);
+        if (location == null) {
+            return IGNORED;
+        }
+        JSONArray days = message.optJSONArray(KEY_DAYS);
+        if (days != null && days.length() > 0) {
+            try {
+                if (apply(location, days)) {
+                    return APPLIED;
+                }
+            } catch (JSONException e) {
+                Log.w(LOG_TAG, "Couldn't read the days pushed for " + location, e);
+            }
+        }
+        if (!location.equals(Utility.getPreferredLocation(mContext))) {
+            // Nothing on screen shows any other location
+            return IGNORED;
+        }
+        switch (SunshineSyncAdapter.syncImmediatelyUnlessBusy(mContext)) {
+            case SunshineSyncAdapter.SYNC_REQUESTED:
+                return SYNC_REQUESTED;
+            case SunshineSyncAdapter.SYNC_BUSY:
+                return SYNC_ALREADY_RUNNING;
+            default:
+                Log.e(LOG_TAG, "No sync account, so the push for " + location + " was dropped");
+                return SYNC_FAILED;
+        }
+    }
+
+    /**
+     * Writes the days to the provider, which tells the forecast's readers.
+     *
+     * @return false if the location has never been synced, so there is nothing to update
+     */
+    boolean apply(String location, JSONArray days) throws JSONException {
+        long locationId = findLocation(location);
+        if (locationId == -1) {
+            return false;
+        }
+        ContentValues[] values = toContentValues(locationId,
+                DayNormalizer.epochDay(System.currentTimeMillis()), days);
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, values);
+        Log.d(LOG_TAG, "Applied " + values.length + " pushed days for " + location);
+        // Nothing keeps the process alive once the message is handled, so don't let the
+        // dispatcher hold this update.
+        WidgetUpdateDispatcher.getInstance(mContext).updateNow();
+        return true;
+    }
+
+    /**
+     * Reads every day before any is written, so a message with one bad day changes nothing.
+     */
+    static ContentValues[] toContentValues(long locationId, long today, JSONArray days)
+            throws JSONException {
+        ContentValues[] values = new ContentValues[days.length()];
+        for (int i = 0; i < values.length; i++) {
+            JSONObject day = days.getJSONObject(i);
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    DayNormalizer.startOfDay(today + day.getInt(KEY_DAY)));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    day.getInt(KEY_WEATHER_ID));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    day.getString(KEY_DESCRIPTION));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, day.getDouble(KEY_MAX));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, day.getDouble(KEY_MIN));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                    day.getDouble(KEY_HUMIDITY));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                    day.getDouble(KEY_PRESSURE));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                    day.getDouble(KEY_WIND_SPEED));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                    day.getDouble(KEY_WIND_DIRECTION));
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private long findLocation(String location) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{location},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
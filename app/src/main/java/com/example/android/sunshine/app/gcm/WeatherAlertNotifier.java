@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.NotificationIconCache;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Shows severe weather alerts in a single notification.
+ *
+ * Alerts tend to come in bursts, one per warning the server sends.  Each one updates the same
+ * notification, listing every alert still current, before the message that brought it is
+ * done with, so nothing is left waiting on a process that may be killed.  Only the first alert
+ * of a burst makes a sound; the rest update the list quietly.  Dismissing the notification
+ * forgets its alerts.  The large icon comes from {@link NotificationIconCache}, already scaled,
+ * instead of decoding the full size art every time.
+ *
+ * The alerts are saved as they change, so an alert that comes in after the process was killed
+ * is shown alongside the ones the user hasn't dismissed yet.
+ */
+final class WeatherAlertNotifier {
+    private static final String LOG_TAG = WeatherAlertNotifier.class.getSimpleName();
+
+    // Kept out of the default preferences, whose listeners rebuild the settings on every write.
+    static final String PREFS_NAME = "weather_alerts";
+    private static final String KEY_ALERTS = "alerts";
+    private static final String KEY_MESSAGE = "message";
+    private static final String KEY_RECEIVED_AT = "receivedAt";
+
+    // Alerts this close after the last one belong to the same burst.
+    static final long BATCH_WINDOW_MILLIS = 3 * 1000;
+    // Alerts older than this have been dealt with, or overtaken by the forecast.
+    static final long ALERT_LIFETIME_MILLIS = 6 * 60 * 60 * 1000;
+    static final int MAX_ALERTS = 20;
+    // The most lines an inbox style notification shows.
+    static final int MAX_LINES = 5;
+
+    private static WeatherAlertNotifier sInstance;
+
+    private static final class Alert {
+        final String message;
+        final long receivedAt;
+
+        Alert(String message, long receivedAt) {
+            this.message = message;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+    // Newest first.
+    private final LinkedList<Alert> mAlerts = new LinkedList<Alert>();
+    private long mLastPostAt = -BATCH_WINDOW_MILLIS;
+    private int mPosts;
+
+    WeatherAlertNotifier(Context context) {
+        mContext = context.getApplicationContext();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        load();
+    }
+
+    static synchronized WeatherAlertNotifier getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherAlertNotifier(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the alert along with any still current.  May read the icon from disk, so call it
+     * from the thread the message arrived on, not the main thread.
+     */
+    void add(String message) {
+        long now = System.currentTimeMillis();
+        List<String> alerts;
+        boolean quiet;
+        synchronized (this) {
+            record(message, now);
+            alerts = getAlerts(now);
+            quiet = now - mLastPostAt < BATCH_WINDOW_MILLIS;
+            mLastPostAt = now;
+            mPosts++;
+        }
+        post(alerts, quiet);
+    }
+
+    // A repeated alert moves to the top rather than showing twice.
+    synchronized void record(String message, long now) {
+        Iterator<Alert> alerts = mAlerts.iterator();
+        while (alerts.hasNext()) {
+            if (alerts.next().message.equals(message)) {
+                alerts.remove();
+            }
+        }
+        mAlerts.addFirst(new Alert(message, now));
+        while (mAlerts.size() > MAX_ALERTS) {
+            mAlerts.removeLast();
+        }
+        // Written straight away: alerts come in on the push's own thread, and the process may
+        // be killed as soon as the message is handled.
+        saved().commit();
+    }
+
+    /**
+     * @return the alerts still current, newest first
+     */
+    synchronized List<String> getAlerts(long now) {
+        boolean expired = false;
+        while (!mAlerts.isEmpty() && now - mAlerts.getLast().receivedAt >= ALERT_LIFETIME_MILLIS) {
+            mAlerts.removeLast();
+            expired = true;
+        }
+        if (expired) {
+            saved().commit();
+        }
+        List<String> messages = new ArrayList<String>(mAlerts.size());
+        for (Alert alert : mAlerts) {
+            messages.add(alert.message);
+        }
+        return messages;
+    }
+
+    /**
+     * Forgets every alert, once the user has dismissed them.
+     */
+    synchronized void clear() {
+        mAlerts.clear();
+        // Called on the main thread, from the receiver, which waits for the write to finish.
+        saved().apply();
+    }
+
+    synchronized int getPostCount() {
+        return mPosts;
+    }
+
+    private void load() {
+        String saved = mPrefs.getString(KEY_ALERTS, null);
+        if (saved == null) return;
+        try {
+            JSONArray alerts = new JSONArray(saved);
+            for (int i = 0; i < alerts.length() && i < MAX_ALERTS; i++) {
+                JSONObject alert = alerts.getJSONObject(i);
+                mAlerts.add(new Alert(alert.getString(KEY_MESSAGE),
+                        alert.getLong(KEY_RECEIVED_AT)));
+            }
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Dropping unreadable saved alerts", e);
+            mAlerts.clear();
+        }
+    }
+
+    // Call with the lock held.
+    private SharedPreferences.Editor saved() {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mAlerts.isEmpty()) {
+            editor.remove(KEY_ALERTS);
+        } else {
+            JSONArray alerts = new JSONArray();
+            try {
+                for (Alert alert : mAlerts) {
+                    alerts.put(new JSONObject()
+                            .put(KEY_MESSAGE, alert.message)
+                            .put(KEY_RECEIVED_AT, alert.receivedAt));
+                }
+            } catch (JSONException e) {
+                // Only thrown for non-finite numbers
+                throw new IllegalStateException(e);
+            }
+            editor.putString(KEY_ALERTS, alerts.toString());
+        }
+        return editor;
+    }
+
+    private void post(List<String> alerts, boolean quiet) {
+        Resources resources = mContext.getResources();
+        PendingIntent contentIntent =
+                PendingIntent.getActivity(mContext, 0, new Intent(mContext, MainActivity.class), 0);
+        PendingIntent deleteIntent = PendingIntent.getBroadcast(mContext, 0,
+                new Intent(mContext, AlertDismissedReceiver.class), 0);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext)
+                .setSmallIcon(R.drawable.art_clear)
+                .setLargeIcon(new NotificationIconCache(mContext).getBundled(R.drawable.art_storm))
+                .setContentTitle(mContext.getString(R.string.gcm_weather_alert_title))
+                .setContentText(alerts.get(0))
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setOnlyAlertOnce(quiet)
+                .setContentIntent(contentIntent)
+                .setDeleteIntent(deleteIntent);
+        if (alerts.size() == 1) {
+            builder.setStyle(new NotificationCompat.BigTextStyle().bigText(alerts.get(0)));
+        } else {
+            String count = resources.getQuantityString(R.plurals.gcm_weather_alert_count,
+                    alerts.size(), alerts.size());
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                    .setSummaryText(count);
+            for (int i = 0; i < alerts.size() && i < MAX_LINES; i++) {
+                style.addLine(alerts.get(i));
+            }
+            builder.setStyle(style).setNumber(alerts.size());
+        }
+        NotificationManager notificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify(MyGcmListenerService.NOTIFICATION_ID, builder.build());
+    }
+}
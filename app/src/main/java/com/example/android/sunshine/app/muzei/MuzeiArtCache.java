@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.support.v4.content.FileProvider;
+import android.util.DisplayMetrics;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Keeps a copy of each piece of Muzei artwork on disk, scaled down to what the screen can show,
+ * and hands Muzei a content URI for it instead of the original.  The originals are photos of
+ * several megabytes; each is downloaded once, and Muzei then reads a file a fraction of that
+ * size from us.
+ *
+ * There is one image per condition group, so the cache never holds more than a handful of
+ * files and nothing is evicted.
+ */
+class MuzeiArtCache {
+
+    private static final String DIRECTORY = "muzei";
+    private static final int JPEG_QUALITY = 90;
+    private static final int TIMEOUT_MILLIS = 30 * 1000;
+    private static final int MAX_REDIRECTS = 5;
+
+    private final Context mContext;
+    private final File mDirectory;
+    private final String mAuthority;
+    // Images are scaled until their shorter side matches this, so they cover the screen either
+    // way up and still leave Muzei room to pan.
+    private final int mTargetSize;
+
+    MuzeiArtCache(Context context) {
+        this(context, longerSide(context.getResources().getDisplayMetrics()));
+    }
+
+    /**
+     * @param targetSize the size, in pixels, the shorter side of each image is scaled down to
+     */
+    MuzeiArtCache(Context context, int targetSize) {
+        mContext = context.getApplicationContext();
+        mDirectory = new File(mContext.getFilesDir(), DIRECTORY);
+        mAuthority = mContext.getString(R.string.muzei_artwork_authority);
+        mTargetSize = targetSize;
+    }
+
+    private static int longerSide(DisplayMetrics metrics) {
+        return Math.max(metrics.widthPixels, metrics.heightPixels);
+    }
+
+    /**
+     * @return a content URI for the cached copy of the image, downloading it first if there
+     * is none yet
+     * @throws IOException if the image couldn't be downloaded, decoded or stored
+     */
+    Uri get(String imageUrl) throws IOException {
+        File file = fileFor(imageUrl);
+        if (!file.exists()) {
+            download(imageUrl, file);
+        }
+        return FileProvider.getUriForFile(mContext, mAuthority, file);
+    }
+
+    // Only for tests.
+    boolean contains(String imageUrl) {
+        return fileFor(imageUrl).exists();
+    }
+
+    // Only for tests: deletes every cached image.
+    void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private File fileFor(String imageUrl) {
+        // The size is part of the name, so a device with a new screen size fetches again.
+        return new File(mDirectory, Integer.toHexString(imageUrl.hashCode()) + "_" + mTargetSize
+                + ".jpg");
+    }
+
+    /*
+        Downloads the original to a temporary file, reads its size so the full decode can skip
+        straight to the nearest power of two above the size we need, then scales the rest of the
+        way.  The result is written under a temporary name and renamed, so a half written file
+        is never served.
+     */
+    private void download(String imageUrl, File file) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + mDirectory);
+        }
+        File original = new File(mDirectory, file.getName() + ".download");
+        Bitmap bitmap;
+        try {
+            fetch(imageUrl, original);
+            bitmap = decodeScaled(original.getPath());
+        } finally {
+            original.delete();
+        }
+        if (bitmap == null) {
+            throw new IOException("Couldn't decode " + imageUrl);
+        }
+
+        File partial = new File(mDirectory, file.getName() + ".part");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(partial));
+        try {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("Couldn't encode " + imageUrl);
+            }
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Couldn't store " + file);
+        }
+    }
+
+    private Bitmap decodeScaled(String path) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int shorter = Math.min(options.outWidth, options.outHeight);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (shorter / (options.inSampleSize * 2) >= mTargetSize) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null) {
+            return null;
+        }
+        shorter = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (shorter > mTargetSize) {
+            float scale = (float) mTargetSize / shorter;
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.round(bitmap.getWidth() * scale), Math.round(bitmap.getHeight() * scale),
+                    true);
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+
+    /*
+        HttpURLConnection won't follow a redirect from http to https, which is what the image
+        host answers the art URLs with, so redirects are followed here instead.
+     */
+    private static void fetch(String imageUrl, File destination) throws IOException {
+        URL url = new URL(imageUrl);
+        for (int redirects = 0; ; redirects++) {
+            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setInstanceFollowRedirects(false);
+            urlConnection.setConnectTimeout(TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(TIMEOUT_MILLIS);
+            try {
+                int responseCode = urlConnection.getResponseCode();
+                if (isRedirect(responseCode)) {
+                    String location = urlConnection.getHeaderField("Location");
+                    if (location == null || redirects == MAX_REDIRECTS) {
+                        throw new IOException("Bad redirect for " + imageUrl);
+                    }
+                    url = new URL(url, location);
+                    continue;
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP " + responseCode + " for " + imageUrl);
+                }
+                copy(urlConnection.getInputStream(), destination);
+                return;
+            } finally {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    private static boolean isRedirect(int responseCode) {
+        switch (responseCode) {
+            case HttpURLConnection.HTTP_MOVED_PERM:
+            case HttpURLConnection.HTTP_MOVED_TEMP:
+            case HttpURLConnection.HTTP_SEE_OTHER:
+            case 307:  // Temporary Redirect
+            case 308:  // Permanent Redirect
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void copy(InputStream in, File destination) throws IOException {
+        OutputStream out = new FileOutputStream(destination);
+        try {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+}
@@ -18,18 +18,30 @@ package com.example.android.sunshine.app.muzei;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastFile;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.io.IOException;
+
 /**
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
+    private static final String LOG_TAG = WeatherMuzeiSource.class.getSimpleName();
+    // Muzei reads the artwork we cache through a content URI it needs permission for.  The
+    // Muzei app opens the URI in its own process when it loads the wallpaper; the API library
+    // in ours never does.  So the grant goes to the Muzei app's package, which publishArtwork
+    // already sends to.
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+
     private static final String[] FORECAST_COLUMNS = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
@@ -38,10 +50,18 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
 
+    private MuzeiArtCache mArtCache;
+
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mArtCache = new MuzeiArtCache(this);
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
         super.onHandleIntent(intent);
@@ -55,25 +75,82 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
+        ForecastFile.Day today = ForecastFile.getInstance(this)
+                .readToday(location, System.currentTimeMillis());
+        if (today != null) {
+            publishWeatherArtwork(location, today.weatherId, today.description);
+            return;
+        }
+
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 location, System.currentTimeMillis());
         Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
         if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+            publishWeatherArtwork(location, cursor.getInt(INDEX_WEATHER_ID),
+                    cursor.getString(INDEX_SHORT_DESC));
+        }
+        cursor.close();
+    }
 
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+    private void publishWeatherArtwork(String location, int weatherId, String desc) {
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        // Only publish a new wallpaper if we have a valid image
+        if (imageUrl == null) {
+            return;
+        }
+        // Conditions in the same group share their image, so a sync that leaves us in the same
+        // group with the same description has nothing new to show
+        Artwork current = getCurrentArtwork();
+        if (isCurrentArtwork(current, imageUrl, location, desc)) {
+            return;
+        }
+
+        Uri imageUri;
+        String token;
+        try {
+            imageUri = mArtCache.get(imageUrl);
+            grantUriPermission(MUZEI_PACKAGE, imageUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            token = imageUrl;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error caching artwork from " + imageUrl, e);
+            // Let Muzei fetch the original itself.  Without a token, the next update tries the
+            // cache again.
+            imageUri = Uri.parse(imageUrl);
+            token = null;
+            if (isCurrentFallback(current, imageUri, location, desc)) {
+                return;
             }
         }
-        cursor.close();
+        publishArtwork(new Artwork.Builder()
+                .imageUri(imageUri)
+                .title(desc)
+                .byline(location)
+                .token(token)
+                .viewIntent(new Intent(this, MainActivity.class))
+                .build());
+    }
+
+    /**
+     * @return whether the artwork already shows this image, served from our cache, for this
+     * location and with this description
+     */
+    static boolean isCurrentArtwork(Artwork current, String imageUrl, String location,
+                                    String desc) {
+        return current != null && imageUrl.equals(current.getToken())
+                && location.equals(current.getByline())
+                && TextUtils.equals(desc, current.getTitle());
+    }
+
+    /**
+     * @return whether the artwork already shows this original image, published without the
+     * cache, for this location and with this description
+     */
+    static boolean isCurrentFallback(Artwork current, Uri imageUri, String location,
+                                     String desc) {
+        return current != null && current.getToken() == null
+                && imageUri.equals(current.getImageUri())
+                && location.equals(current.getByline())
+                && TextUtils.equals(desc, current.getTitle());
     }
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.android.sunshine.app.PreferencesSnapshot;
+import com.example.android.sunshine.app.R;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Finds out whether the forecast API knows a location, without downloading its forecast.
+ *
+ * A new location used to be checked by syncing it, so a typo cost a full forecast download and
+ * the database writes around it.  The check here asks for the location's current conditions,
+ * a response of a few hundred bytes, and remembers the answer: locations the API has accepted
+ * or rejected, whether here or by a sync, are answered without a request.  Lookups of the same
+ * location that overlap share one request.
+ */
+public final class LocationValidator {
+    private static final String LOG_TAG = LocationValidator.class.getSimpleName();
+
+    static final int MAX_ENTRIES = 64;
+    private static final int TIMEOUT_MILLIS = 15 * 1000;
+
+    /** Asks the server about a location. */
+    interface Lookup {
+        @SunshineSyncAdapter.LocationStatus
+        int lookup(String location);
+    }
+
+    /** Starts the sync that follows a location's check. */
+    interface SyncRequester {
+        void requestSync(Context context);
+    }
+
+    private static final SyncRequester SYNC_IMMEDIATELY = new SyncRequester() {
+        @Override
+        public void requestSync(Context context) {
+            SunshineSyncAdapter.syncImmediately(context);
+        }
+    };
+
+    private static LocationValidator sInstance;
+
+    private final Lookup mLookup;
+    private final SyncRequester mSyncRequester;
+    // LOCATION_STATUS_OK or LOCATION_STATUS_INVALID by location; other answers say nothing
+    // about the location, so they aren't kept.
+    private final LruCache<String, Integer> mKnown;
+    private final Map<String, FutureTask<Integer>> mInFlight =
+            new HashMap<String, FutureTask<Integer>>();
+    private final Executor mExecutor = Executors.newSingleThreadExecutor();
+    private int mLookups;
+
+    LocationValidator(Lookup lookup, int maxEntries) {
+        this(lookup, SYNC_IMMEDIATELY, maxEntries);
+    }
+
+    LocationValidator(Lookup lookup, SyncRequester syncRequester, int maxEntries) {
+        mLookup = lookup;
+        mSyncRequester = syncRequester;
+        mKnown = new LruCache<String, Integer>(maxEntries);
+    }
+
+    public static synchronized LocationValidator getInstance() {
+        if (sInstance == null) {
+            sInstance = new LocationValidator(new Lookup() {
+                @Override
+                public int lookup(String location) {
+                    return lookupCurrentWeather(location);
+                }
+            }, MAX_ENTRIES);
+        }
+        return sInstance;
+    }
+
+    // The API ignores case and surrounding spaces.
+    private static String key(String location) {
+        return location.trim().toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return what is already known about the location, LOCATION_STATUS_OK or
+     * LOCATION_STATUS_INVALID, or LOCATION_STATUS_UNKNOWN.  Never makes a request.
+     */
+    @SuppressWarnings("ResourceType")
+    public @SunshineSyncAdapter.LocationStatus int getKnownStatus(String location) {
+        Integer status = mKnown.get(key(location));
+        return status != null ? status : SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+    }
+
+    /**
+     * Records what a sync found out about a location.
+     */
+    void record(String location, @SunshineSyncAdapter.LocationStatus int status) {
+        if (status == SunshineSyncAdapter.LOCATION_STATUS_OK
+                || status == SunshineSyncAdapter.LOCATION_STATUS_INVALID) {
+            mKnown.put(key(location), status);
+        }
+    }
+
+    /**
+     * @return LOCATION_STATUS_OK or LOCATION_STATUS_INVALID, or LOCATION_STATUS_SERVER_DOWN or
+     * LOCATION_STATUS_SERVER_INVALID if the server couldn't say, or LOCATION_STATUS_UNKNOWN if
+     * interrupted while waiting for another caller's lookup.  Blocks on the network when the
+     * location isn't known, so never call this on the main thread.
+     */
+    @SuppressWarnings("ResourceType")
+    public @SunshineSyncAdapter.LocationStatus int validate(final String location) {
+        final String key = key(location);
+        Integer known = mKnown.get(key);
+        if (known != null) {
+            return known;
+        }
+        FutureTask<Integer> task;
+        boolean owner = false;
+        synchronized (mInFlight) {
+            task = mInFlight.get(key);
+            if (task == null) {
+                task = new FutureTask<Integer>(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int status = mLookup.lookup(location);
+                        record(location, status);
+                        return status;
+                    }
+                });
+                mInFlight.put(key, task);
+                mLookups++;
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (mInFlight) {
+                    mInFlight.remove(key);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error validating " + location, e);
+            return SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+        }
+    }
+
+    /**
+     * Validates the location off the main thread, and syncs it unless it turned out to be
+     * invalid, in which case the location status says so.  A location the server couldn't
+     * answer for is synced anyway, and the sync reports whatever went wrong.
+     *
+     * @param location the location just saved, as read from the preferences themselves:
+     * {@link PreferencesSnapshot} may not have caught up with the change yet
+     */
+    public void validateThenSync(Context context, final String location) {
+        final Context appContext = context.getApplicationContext();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (validate(location) != SunshineSyncAdapter.LOCATION_STATUS_INVALID) {
+                    mSyncRequester.requestSync(appContext);
+                } else if (location.equals(getSavedLocation(appContext))) {
+                    // Only if the user hasn't moved on to another location meanwhile
+                    SunshineSyncAdapter.setLocationStatus(appContext,
+                            SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+                }
+            }
+        });
+    }
+
+    // Straight from the preferences, for the same reason as above.
+    private static String getSavedLocation(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getString(
+                context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+    }
+
+    int getLookupCount() {
+        synchronized (mInFlight) {
+            return mLookups;
+        }
+    }
+
+    /*
+        Asks for the location's current conditions, which the API answers with a small object,
+        or a "cod" of 404 if it doesn't know the location.
+     */
+    private static int lookupCurrentWeather(String location) {
+        final String WEATHER_BASE_URL = "http://api.openweathermap.org/data/2.5/weather?";
+        final String QUERY_PARAM = "q";
+        final String OWM_MESSAGE_CODE = "cod";
+
+        Uri builtUri = Uri.parse(WEATHER_BASE_URL).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, location)
+                .build();
+        HttpURLConnection urlConnection = null;
+        try {
+            urlConnection = (HttpURLConnection) new URL(builtUri.toString()).openConnection();
+            urlConnection.setConnectTimeout(TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(TIMEOUT_MILLIS);
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                return SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                return SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+            }
+            StringBuilder buffer = new StringBuilder();
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(urlConnection.getInputStream()));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    buffer.append(line);
+                }
+            } finally {
+                reader.close();
+            }
+            // The code comes back as a number or a string, depending on the error.
+            JSONObject json = new JSONObject(buffer.toString());
+            int code = json.has(OWM_MESSAGE_CODE)
+                    ? json.getInt(OWM_MESSAGE_CODE) : HttpURLConnection.HTTP_OK;
+            switch (code) {
+                case HttpURLConnection.HTTP_OK:
+                    return SunshineSyncAdapter.LOCATION_STATUS_OK;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    return SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                default:
+                    return SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error validating " + location, e);
+            return SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            return SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.PreferencesSnapshot;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArt;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Large icons for the weather notification, already scaled to the size the notification shows
+ * them at.
+ *
+ * Art pack images come from {@link WeatherArt}, whose disk cache keeps them at that size.  The
+ * bundled art is several times bigger than a large icon, so each piece is scaled down once and
+ * kept as a PNG in the cache directory; a notification only comes once a day, long after the
+ * process that made the last one is gone, so memory alone wouldn't help.
+ */
+public final class NotificationIconCache {
+    private static final String LOG_TAG = NotificationIconCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "notification_icons";
+    // Icons are only valid for the build whose art they were made from.
+    private static final String SUFFIX = "_" + BuildConfig.VERSION_CODE + ".png";
+    // One per condition group is plenty.
+    private static final int MEMORY_ENTRIES = 10;
+
+    private static final LruCache<String, Bitmap> sMemory =
+            new LruCache<String, Bitmap>(MEMORY_ENTRIES);
+
+    private final Context mContext;
+    private final File mDirectory;
+    private final int mWidth;
+    private final int mHeight;
+
+    public NotificationIconCache(Context context) {
+        mContext = context.getApplicationContext();
+        mDirectory = new File(mContext.getCacheDir(), DIRECTORY);
+        Resources resources = mContext.getResources();
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        @SuppressLint("InlinedApi")
+        int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        mWidth = largeIconWidth;
+        mHeight = largeIconHeight;
+    }
+
+    /**
+     * @return the large icon for the condition, from the art pack in use, or null if there is
+     * no art for it.  Blocks while art is downloaded or scaled, so never call this on the main
+     * thread.
+     */
+    public Bitmap get(int weatherId) {
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (!PreferencesSnapshot.get(mContext).localGraphics) {
+            String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            try {
+                return WeatherArt.get(mContext, artUrl, artResourceId, mWidth, mHeight);
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            }
+        }
+        return artResourceId == -1 ? null : getBundled(artResourceId);
+    }
+
+    /**
+     * @return a piece of bundled art at the large icon size, or null if it couldn't be decoded.
+     * Reads and may write the disk, so never call this on the main thread.
+     */
+    public Bitmap getBundled(int artResourceId) {
+        // Resource ids can change from build to build; names don't.
+        String name = mContext.getResources().getResourceEntryName(artResourceId) + "_" + mWidth
+                + "x" + mHeight + SUFFIX;
+        Bitmap icon = sMemory.get(name);
+        if (icon != null) {
+            return icon;
+        }
+        File file = new File(mDirectory, name);
+        icon = BitmapFactory.decodeFile(file.getPath());
+        if (icon == null) {
+            icon = scale(artResourceId);
+            if (icon == null) {
+                return null;
+            }
+            store(icon, file);
+        }
+        sMemory.put(name, icon);
+        return icon;
+    }
+
+    /**
+     * Forgets the icons held in memory, leaving those on disk.
+     */
+    static void evictMemory() {
+        sMemory.evictAll();
+    }
+
+    // Decodes at the nearest power of two above the size, then scales the rest of the way,
+    // keeping the art's proportions.
+    private Bitmap scale(int artResourceId) {
+        Resources resources = mContext.getResources();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, artResourceId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= mWidth
+                && options.outHeight / (options.inSampleSize * 2) >= mHeight) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, artResourceId, options);
+        if (bitmap == null) {
+            return null;
+        }
+        float scale = Math.min((float) mWidth / bitmap.getWidth(),
+                (float) mHeight / bitmap.getHeight());
+        if (scale >= 1) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        bitmap.recycle();
+        return scaled;
+    }
+
+    /*
+        Writes under a temporary name and renames, so a half written icon is never read, and
+        drops icons left by earlier builds.
+     */
+    private void store(Bitmap icon, File file) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File[] stale = mDirectory.listFiles();
+        if (stale != null) {
+            for (File old : stale) {
+                if (!old.getName().endsWith(SUFFIX)) {
+                    old.delete();
+                }
+            }
+        }
+        File partial = new File(mDirectory, file.getName() + ".part");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(partial));
+            try {
+                icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } finally {
+                out.close();
+            }
+            if (!partial.renameTo(file)) {
+                partial.delete();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error storing large icon " + file, e);
+            partial.delete();
+        }
+    }
+}
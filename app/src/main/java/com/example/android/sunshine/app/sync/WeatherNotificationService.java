@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.PreferencesSnapshot;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastFile;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Shows the day's weather notification once a sync has stored the forecast.  It runs on its own
+ * thread, so a sync is done as soon as its data is, however long the notification's art takes
+ * to arrive.  The time each stage took is logged.
+ */
+public class WeatherNotificationService extends IntentService {
+    private static final String LOG_TAG = WeatherNotificationService.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int WEATHER_NOTIFICATION_ID = 3004;
+
+    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+
+    private NotificationIconCache mIcons;
+
+    public WeatherNotificationService() {
+        super("WeatherNotificationService");
+    }
+
+    /**
+     * Notifies the user of today's weather, if they want that and haven't had today's yet.
+     */
+    public static void start(Context context) {
+        context.startService(new Intent(context, WeatherNotificationService.class));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mIcons = new NotificationIconCache(this);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        //checking the last update and notify if it' the first of the day
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        boolean displayNotifications = prefs.getBoolean(
+                getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(getString(R.string.pref_enable_notifications_default)));
+        if (!displayNotifications) {
+            return;
+        }
+        String lastNotificationKey = getString(R.string.pref_last_notification);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(lastNotificationKey, 0) < DAY_IN_MILLIS) {
+            return;
+        }
+
+        // Last sync was more than 1 day ago, let's send a notification with the weather.
+        long start = SystemClock.elapsedRealtime();
+        PreferencesSnapshot snapshot = PreferencesSnapshot.get(this);
+        int weatherId;
+        double high;
+        double low;
+        String desc;
+        ForecastFile.Day today = ForecastFile.getInstance(this).readToday(snapshot.location, now);
+        if (today != null) {
+            weatherId = today.weatherId;
+            high = today.high;
+            low = today.low;
+            desc = today.description;
+        } else {
+            Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                    snapshot.location, now);
+            Cursor cursor = getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION,
+                    null, null, null);
+            if (cursor == null) {
+                return;
+            }
+            try {
+                if (!cursor.moveToFirst()) {
+                    return;
+                }
+                weatherId = cursor.getInt(INDEX_WEATHER_ID);
+                high = cursor.getDouble(INDEX_MAX_TEMP);
+                low = cursor.getDouble(INDEX_MIN_TEMP);
+                desc = cursor.getString(INDEX_SHORT_DESC);
+            } finally {
+                cursor.close();
+            }
+        }
+        long read = SystemClock.elapsedRealtime();
+
+        Bitmap largeIcon = mIcons.get(weatherId);
+        long icon = SystemClock.elapsedRealtime();
+
+        // Define the text of the forecast.
+        String contentText = String.format(getString(R.string.format_notification),
+                desc,
+                Utility.formatTemperature(this, high, snapshot.metric),
+                Utility.formatTemperature(this, low, snapshot.metric));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this)
+                .setColor(getResources().getColor(R.color.primary_light))
+                .setSmallIcon(Utility.getIconResourceForWeatherCondition(weatherId))
+                .setLargeIcon(largeIcon)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(contentText);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.  The stack builder gives the started
+        // Activity an artificial back stack, so navigating backward from it leads out of
+        // the application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(this);
+        stackBuilder.addNextIntent(new Intent(this, MainActivity.class));
+        builder.setContentIntent(
+                stackBuilder.getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT));
+
+        NotificationManager notificationManager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, builder.build());
+
+        //refreshing last sync
+        prefs.edit().putLong(lastNotificationKey, System.currentTimeMillis()).commit();
+        long posted = SystemClock.elapsedRealtime();
+
+        Log.d(LOG_TAG, "Notified in " + (posted - start) + "ms: read " + (read - start)
+                + "ms, icon " + (icon - read) + "ms, build and post " + (posted - icon) + "ms");
+    }
+}
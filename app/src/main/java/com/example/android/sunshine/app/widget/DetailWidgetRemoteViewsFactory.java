@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.AdapterView;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArt;
+import com.example.android.sunshine.app.data.ForecastFile;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Supplies the rows of the scrollable weather detail widget.
+ *
+ * {@link #onDataSetChanged} copies the forecast into arrays and closes its cursor, and fetches
+ * all of the art pack images in parallel, scaled down to the widget's icon size, since every
+ * bitmap in a row is copied to the launcher with it.  Rows are then built from the arrays alone.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class DetailWidgetRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
+    private static final String LOG_TAG = DetailWidgetRemoteViewsFactory.class.getSimpleName();
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_DATE = 0;
+    private static final int INDEX_WEATHER_CONDITION_ID = 1;
+    private static final int INDEX_WEATHER_DESC = 2;
+    private static final int INDEX_WEATHER_MAX_TEMP = 3;
+    private static final int INDEX_WEATHER_MIN_TEMP = 4;
+
+    // Art kept between refreshes, in icons.  Every condition in a forecast fits, with room for
+    // an art pack change.
+    private static final int ART_CACHE_ICONS = 16;
+
+    private final Context mContext;
+    private final int mIconSize;
+    // Art by URL, bounded by bytes.
+    private final LruCache<String, Bitmap> mArt;
+    private Rows mRows = Rows.EMPTY;
+
+    /*
+        The rows of the last refresh, copied out of the cursor so it can be closed straight away
+        and rows can be served without going back to SQLite.  Never changed once built.
+     */
+    private static final class Rows {
+        static final Rows EMPTY = new Rows(0, null);
+
+        final int count;
+        // Also the rows' ids: a date is unique within a location, whether the row came from the
+        // forecast file or the provider.
+        final long[] dates;
+        final int[] weatherIds;
+        final String[] descriptions;
+        final double[] highs;
+        final double[] lows;
+        // Each row's art, or null where it shows its icon.
+        final Bitmap[] art;
+        // The location's weather URI, which a row's date is appended to for its fill-in intent.
+        final Uri locationUri;
+
+        Rows(int count, String location) {
+            this.count = count;
+            dates = new long[count];
+            weatherIds = new int[count];
+            descriptions = new String[count];
+            highs = new double[count];
+            lows = new double[count];
+            art = new Bitmap[count];
+            locationUri = location == null ? null
+                    : WeatherContract.WeatherEntry.buildWeatherLocation(location);
+        }
+    }
+
+    DetailWidgetRemoteViewsFactory(Context context) {
+        mContext = context;
+        mIconSize = WeatherArt.getListIconSize(context);
+        mArt = new LruCache<String, Bitmap>(ART_CACHE_ICONS * mIconSize * mIconSize * 4) {
+            @Override
+            protected int sizeOf(String url, Bitmap art) {
+                return art.getByteCount();
+            }
+        };
+    }
+
+    @Override
+    public void onCreate() {
+        // Nothing to do
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        Rows rows = read(Utility.getPreferredLocation(mContext));
+        resolveArt(rows);
+        mRows = rows;
+    }
+
+    private Rows read(String location) {
+        List<ForecastFile.Day> days = ForecastFile.getInstance(mContext)
+                .read(location, System.currentTimeMillis());
+        if (days != null) {
+            Rows rows = new Rows(days.size(), location);
+            for (int i = 0; i < rows.count; i++) {
+                ForecastFile.Day day = days.get(i);
+                rows.dates[i] = day.date;
+                rows.weatherIds[i] = day.weatherId;
+                rows.descriptions[i] = day.description;
+                rows.highs[i] = day.high;
+                rows.lows[i] = day.low;
+            }
+            return rows;
+        }
+        // This method is called by the app hosting the widget (e.g., the launcher)
+        // However, our ContentProvider is not exported so it doesn't have access to the
+        // data. Therefore we need to clear (and finally restore) the calling identity so
+        // that calls use our process and permission
+        final long identityToken = Binder.clearCallingIdentity();
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+        Cursor data = mContext.getContentResolver().query(weatherForLocationUri,
+                FORECAST_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        Binder.restoreCallingIdentity(identityToken);
+        if (data == null) {
+            return Rows.EMPTY;
+        }
+        try {
+            Rows rows = new Rows(data.getCount(), location);
+            for (int i = 0; i < rows.count && data.moveToPosition(i); i++) {
+                rows.dates[i] = data.getLong(INDEX_WEATHER_DATE);
+                rows.weatherIds[i] = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                rows.descriptions[i] = data.getString(INDEX_WEATHER_DESC);
+                rows.highs[i] = data.getDouble(INDEX_WEATHER_MAX_TEMP);
+                rows.lows[i] = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+            }
+            return rows;
+        } finally {
+            data.close();
+        }
+    }
+
+    /*
+        Starts a load for each piece of art the rows need that isn't already kept, then waits
+        for them all.  Glide runs them side by side, so a refresh waits about as long as the
+        slowest one.
+     */
+    private void resolveArt(Rows rows) {
+        if (rows.count == 0 || Utility.usingLocalGraphics(mContext)) {
+            return;
+        }
+        String[] urls = new String[rows.count];
+        Map<String, FutureTarget<Bitmap>> loads = new HashMap<String, FutureTarget<Bitmap>>();
+        for (int i = 0; i < rows.count; i++) {
+            int weatherId = rows.weatherIds[i];
+            String url = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            urls[i] = url;
+            if (url == null || loads.containsKey(url) || mArt.get(url) != null) {
+                continue;
+            }
+            loads.put(url, WeatherArt.submit(mContext, url,
+                    Utility.getIconResourceForWeatherCondition(weatherId), mIconSize, mIconSize));
+        }
+        for (Map.Entry<String, FutureTarget<Bitmap>> load : loads.entrySet()) {
+            try {
+                mArt.put(load.getKey(), load.getValue().get());
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e(LOG_TAG, "Error retrieving art from " + load.getKey(), e);
+            }
+        }
+        // Whatever couldn't be loaded falls back to the icon
+        for (int i = 0; i < rows.count; i++) {
+            rows.art[i] = urls[i] == null ? null : mArt.get(urls[i]);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        mRows = Rows.EMPTY;
+        mArt.evictAll();
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.count;
+    }
+
+    @Override
+    public RemoteViews getViewAt(int position) {
+        Rows rows = mRows;
+        if (position == AdapterView.INVALID_POSITION || position >= rows.count) {
+            return null;
+        }
+        RemoteViews views = new RemoteViews(mContext.getPackageName(),
+                R.layout.widget_detail_list_item);
+        int weatherId = rows.weatherIds[position];
+        int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+        Bitmap weatherArtImage = rows.art[position];
+        String description = rows.descriptions[position];
+        long dateInMillis = rows.dates[position];
+        String formattedDate = Utility.getFriendlyDayString(mContext, dateInMillis, false);
+        String formattedMaxTemperature = Utility.formatTemperature(mContext, rows.highs[position]);
+        String formattedMinTemperature = Utility.formatTemperature(mContext, rows.lows[position]);
+        if (weatherArtImage != null) {
+            views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+        } else {
+            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_date, formattedDate);
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+        final Intent fillInIntent = new Intent();
+        Uri weatherUri = Uri.withAppendedPath(rows.locationUri,
+                Long.toString(WeatherContract.normalizeDate(dateInMillis)));
+        fillInIntent.setData(weatherUri);
+        views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+        return views;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+
+    @Override
+    public RemoteViews getLoadingView() {
+        return new RemoteViews(mContext.getPackageName(), R.layout.widget_detail_list_item);
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Rows rows = mRows;
+        if (position >= 0 && position < rows.count)
+            return rows.dates[position];
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+}
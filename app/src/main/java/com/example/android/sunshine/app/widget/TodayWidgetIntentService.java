@@ -26,18 +26,25 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastFile;
 import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
 public class TodayWidgetIntentService extends IntentService {
+    private static final String LOG_TAG = TodayWidgetIntentService.class.getSimpleName();
+
+    // What each widget shows now, so updates that change nothing aren't sent
+    private static final WidgetRenderCache sRenderCache = new WidgetRenderCache();
+
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
@@ -61,43 +68,69 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
+        // Get today's data from the forecast file the sync writes, or the ContentProvider if
+        // the file can't answer
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
-        }
-        if (!data.moveToFirst()) {
+        int weatherId;
+        String description;
+        double maxTemp;
+        double minTemp;
+        ForecastFile.Day today = ForecastFile.getInstance(this)
+                .readToday(location, System.currentTimeMillis());
+        if (today != null) {
+            weatherId = today.weatherId;
+            description = today.description;
+            maxTemp = today.high;
+            minTemp = today.low;
+        } else {
+            Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                    .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+            Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS,
+                    null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            if (data == null) {
+                return;
+            }
+            if (!data.moveToFirst()) {
+                data.close();
+                return;
+            }
+
+            // Extract the weather data from the Cursor
+            weatherId = data.getInt(INDEX_WEATHER_ID);
+            description = data.getString(INDEX_SHORT_DESC);
+            maxTemp = data.getDouble(INDEX_MAX_TEMP);
+            minTemp = data.getDouble(INDEX_MIN_TEMP);
             data.close();
-            return;
         }
-
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
         int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
         String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
+
+        String fingerprint = weatherArtResourceId + "|" + description + "|"
+                + formattedMaxTemperature + "|" + formattedMinTemperature;
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        int pushed = 0;
 
         // Perform this loop procedure for each Today widget
         for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
+            // Find the correct layout based on the widget's width, unless it's still the one
+            // we last gave it
+            int layoutId = sRenderCache.getLayout(appWidgetId);
+            if (layoutId == 0) {
+                int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
+                if (widgetWidth >= largeWidth) {
+                    layoutId = R.layout.widget_today_large;
+                } else if (widgetWidth >= defaultWidth) {
+                    layoutId = R.layout.widget_today;
+                } else {
+                    layoutId = R.layout.widget_today_small;
+                }
+            }
+
+            int update = sRenderCache.update(appWidgetId, layoutId, fingerprint);
+            if (update == WidgetRenderCache.SKIP) {
+                continue;
             }
             RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
@@ -111,14 +144,31 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+            if (update == WidgetRenderCache.PARTIAL) {
+                // The widget already has this layout and its click handler, so only the content
+                // is sent, to be applied to the views it has
+                appWidgetManager.partiallyUpdateAppWidget(appWidgetId, views);
+            } else {
+                // Create an Intent to launch MainActivity
+                Intent launchIntent = new Intent(this, MainActivity.class);
+                PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+                views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+                // Tell the AppWidgetManager to perform an update on the current app widget
+                appWidgetManager.updateAppWidget(appWidgetId, views);
+            }
+            pushed++;
         }
+        Log.d(LOG_TAG, "Updated " + pushed + " of " + appWidgetIds.length + " Today widgets ("
+                + sRenderCache.getFullCount() + " full, " + sRenderCache.getPartialCount()
+                + " partial and " + sRenderCache.getSkippedCount() + " skipped so far)");
+    }
+
+    /**
+     * Makes the next update work out the widgets' layouts again and push them in full.
+     */
+    static void invalidate(int... appWidgetIds) {
+        sRenderCache.remove(appWidgetIds);
     }
 
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
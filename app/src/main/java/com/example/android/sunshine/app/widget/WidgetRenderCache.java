@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.util.SparseArray;
+
+/**
+ * Remembers what was last pushed to each widget: the layout its size called for and a
+ * fingerprint of the content shown in it.  That tells an update whether a widget needs nothing,
+ * just its content (which a partial update can set on the views it already has), or a whole new
+ * set of views.
+ *
+ * Entries only live as long as the process.  A new process starts with none, so its first update
+ * pushes every widget in full, which is always safe.
+ */
+final class WidgetRenderCache {
+
+    /** The widget already shows this content in this layout. */
+    static final int SKIP = 0;
+    /** Same layout, new content; only the content needs setting. */
+    static final int PARTIAL = 1;
+    /** New widget, or a new layout for it; it needs all of its views. */
+    static final int FULL = 2;
+
+    private static final class Entry {
+        int layoutId;
+        String fingerprint;
+    }
+
+    private final SparseArray<Entry> mEntries = new SparseArray<Entry>();
+    private int mSkipped;
+    private int mPartial;
+    private int mFull;
+
+    /**
+     * @return the layout last pushed to the widget, or 0 if it has to be worked out again
+     */
+    synchronized int getLayout(int appWidgetId) {
+        Entry entry = mEntries.get(appWidgetId);
+        return entry == null ? 0 : entry.layoutId;
+    }
+
+    /**
+     * Records that the widget is about to show this content in this layout.
+     *
+     * @return {@link #SKIP}, {@link #PARTIAL} or {@link #FULL}, the update it needs for that
+     */
+    synchronized int update(int appWidgetId, int layoutId, String fingerprint) {
+        Entry entry = mEntries.get(appWidgetId);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(appWidgetId, entry);
+        }
+        int update;
+        if (entry.layoutId != layoutId) {
+            update = FULL;
+            mFull++;
+        } else if (!fingerprint.equals(entry.fingerprint)) {
+            update = PARTIAL;
+            mPartial++;
+        } else {
+            update = SKIP;
+            mSkipped++;
+        }
+        entry.layoutId = layoutId;
+        entry.fingerprint = fingerprint;
+        return update;
+    }
+
+    /**
+     * Forgets the widgets, so their next update works out their layout again and pushes them
+     * in full.  For widgets that were resized, restored or deleted.
+     */
+    synchronized void remove(int... appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            mEntries.remove(appWidgetId);
+        }
+    }
+
+    synchronized int getSkippedCount() {
+        return mSkipped;
+    }
+
+    synchronized int getPartialCount() {
+        return mPartial;
+    }
+
+    synchronized int getFullCount() {
+        return mFull;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * Merges widget update requests that arrive close together.
+ *
+ * A manual refresh, a location change and a periodic sync can finish within seconds of each
+ * other, and each would otherwise make every widget reload its data.  The first request after a
+ * quiet spell sends {@link SunshineSyncAdapter#ACTION_DATA_UPDATED} straight away, while the
+ * sync or push that asked is still running and keeping the process alive.  Requests that follow
+ * within the quiet window are held until none has come in for a whole window, then sent as one
+ * broadcast, or after a longest delay if they keep coming, so widgets never fall far behind.
+ * Only those follow-ups can be lost if the process dies first, and the first update of the
+ * burst has already gone out by then.
+ */
+public final class WidgetUpdateDispatcher {
+
+    static final long DEFAULT_QUIET_WINDOW_MILLIS = 2 * 1000;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 10 * 1000;
+
+    /** Where the dispatcher gets the time and runs delayed work, so tests can run it on theirs. */
+    interface Scheduler {
+        long uptimeMillis();
+
+        void postAtTime(Runnable task, long uptimeMillis);
+
+        void remove(Runnable task);
+    }
+
+    private static WidgetUpdateDispatcher sInstance;
+
+    private final Scheduler mScheduler;
+    private final long mQuietWindowMillis;
+    private final long mMaxDelayMillis;
+    private final Runnable mUpdate;
+
+    // When the last update went out, or -1 if none has.
+    private long mLastDispatchAt = -1;
+    // When the oldest request being held came in, or -1 if there is none.
+    private long mFirstHeldAt = -1;
+    private int mRequests;
+    private int mDispatches;
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WidgetUpdateDispatcher.this) {
+                mFirstHeldAt = -1;
+                markDispatched();
+            }
+            mUpdate.run();
+        }
+    };
+
+    WidgetUpdateDispatcher(Scheduler scheduler, long quietWindowMillis, long maxDelayMillis,
+                           Runnable update) {
+        mScheduler = scheduler;
+        mQuietWindowMillis = quietWindowMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mUpdate = update;
+    }
+
+    public static synchronized WidgetUpdateDispatcher getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            final Handler handler = new Handler(Looper.getMainLooper());
+            Scheduler scheduler = new Scheduler() {
+                @Override
+                public long uptimeMillis() {
+                    return SystemClock.uptimeMillis();
+                }
+
+                @Override
+                public void postAtTime(Runnable task, long uptimeMillis) {
+                    handler.postAtTime(task, uptimeMillis);
+                }
+
+                @Override
+                public void remove(Runnable task) {
+                    handler.removeCallbacks(task);
+                }
+            };
+            sInstance = new WidgetUpdateDispatcher(scheduler, DEFAULT_QUIET_WINDOW_MILLIS,
+                    DEFAULT_MAX_DELAY_MILLIS, new Runnable() {
+                        @Override
+                        public void run() {
+                            // Setting the package ensures that only components in our app will
+                            // receive the broadcast
+                            appContext.sendBroadcast(
+                                    new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                                            .setPackage(appContext.getPackageName()));
+                        }
+                    });
+        }
+        return sInstance;
+    }
+
+    /**
+     * Updates the widgets now, or once requests stop coming in if one was sent moments ago.
+     */
+    public void requestUpdate() {
+        synchronized (this) {
+            long now = mScheduler.uptimeMillis();
+            mRequests++;
+            boolean quiet = mFirstHeldAt < 0
+                    && (mLastDispatchAt < 0 || now - mLastDispatchAt >= mQuietWindowMillis);
+            if (!quiet) {
+                if (mFirstHeldAt < 0) {
+                    mFirstHeldAt = now;
+                }
+                long at = Math.min(now + mQuietWindowMillis, mFirstHeldAt + mMaxDelayMillis);
+                mScheduler.remove(mDispatch);
+                mScheduler.postAtTime(mDispatch, at);
+                return;
+            }
+            markDispatched();
+        }
+        mUpdate.run();
+    }
+
+    /**
+     * Updates the widgets now, taking any held requests with it.  For callers that can't count
+     * on the process living until a held update goes out, such as a push handled on its own.
+     */
+    public void updateNow() {
+        synchronized (this) {
+            mRequests++;
+            mScheduler.remove(mDispatch);
+            mFirstHeldAt = -1;
+            markDispatched();
+        }
+        mUpdate.run();
+    }
+
+    // Call with the lock held.
+    private void markDispatched() {
+        mLastDispatchAt = mScheduler.uptimeMillis();
+        mDispatches++;
+    }
+
+    synchronized int getRequestCount() {
+        return mRequests;
+    }
+
+    synchronized int getDispatchCount() {
+        return mDispatches;
+    }
+}
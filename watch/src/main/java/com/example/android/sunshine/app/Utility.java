@@ -5,6 +5,19 @@ package com.example.android.sunshine.app;
  */
 public class Utility {
 
+    // Condition ids run from 200 to 962.
+    private static final int MAX_WEATHER_ID = 999;
+
+    // Art resource per condition id, filled once from artForWeatherCondition so the watch face
+    // does an array read per draw.  The rules match the app's WeatherConditions.
+    private static final int[] sArtResources = new int[MAX_WEATHER_ID + 1];
+
+    static {
+        for (int weatherId = 0; weatherId <= MAX_WEATHER_ID; weatherId++) {
+            sArtResources[weatherId] = artForWeatherCondition(weatherId);
+        }
+    }
+
     /**
      * Helper method to provide the art resource id according to the weather condition id returned
      * by the OpenWeatherMap call.
@@ -12,6 +25,13 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return -1;
+        }
+        return sArtResources[weatherId];
+    }
+
+    private static int artForWeatherCondition(int weatherId) {
         // Based on weather code data found at:
         // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
         if (weatherId >= 200 && weatherId <= 232) {